@@ -1,8 +1,12 @@
+import ast.TermFactory;
+import engine.NativeRuleRegistry;
+import eval.Strategy;
 import interpreter.Interpreter;
 import repl.Repl;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 
 public class Main {
     public static void main(String[] args) throws IOException {
@@ -20,7 +24,7 @@ public class Main {
         switch (mode) {
             case "-i":
                 if (args.length < 2) {
-                    System.err.println("Usage: rx -i <file> [-d] [-h]");
+                    System.err.println("Usage: rx -i <file> [-d] [-h] [-t] [-s] [-hc] [-m] [-l] [-p] [-j <jobs>] [-cy] [-ni] [-steps <n>] [-timeout <ms>]");
                     System.exit(1);
                 }
 
@@ -29,12 +33,47 @@ public class Main {
                 boolean debug = false;
                 boolean highlight = false;
                 boolean testModules = false;
+                boolean specialized = false;
+                boolean memoizeAll = false;
+                Strategy strategy = Strategy.EAGER;
+                int jobs = 1;
+                boolean detectCycles = false;
+                long maxSteps = Long.MAX_VALUE;
+                Duration timeout = null;
 
                 for (int i = 2; i < args.length; i++) {
                     switch (args[i]) {
                         case "-d" -> debug = true;
                         case "-h" -> highlight = true;
                         case "-t" -> testModules = true;
+                        case "-s" -> specialized = true;
+                        case "-hc" -> TermFactory.setEnabled(true);
+                        case "-m" -> memoizeAll = true;
+                        case "-l" -> strategy = Strategy.LAZY;
+                        case "-p" -> strategy = Strategy.PARALLEL;
+                        case "-cy" -> detectCycles = true;
+                        case "-ni" -> NativeRuleRegistry.setIntrinsicsEnabled(false);
+                        case "-j" -> {
+                            if (i + 1 >= args.length || !args[i + 1].matches("[1-9][0-9]*")) {
+                                System.err.println("Error: -j requires a positive number of jobs.");
+                                System.exit(1);
+                            }
+                            jobs = Integer.parseInt(args[++i]);
+                        }
+                        case "-steps" -> {
+                            if (i + 1 >= args.length || !args[i + 1].matches("[1-9][0-9]{0,17}")) {
+                                System.err.println("Error: -steps requires a positive step budget.");
+                                System.exit(1);
+                            }
+                            maxSteps = Long.parseLong(args[++i]);
+                        }
+                        case "-timeout" -> {
+                            if (i + 1 >= args.length || !args[i + 1].matches("[1-9][0-9]{0,17}")) {
+                                System.err.println("Error: -timeout requires a positive number of milliseconds.");
+                                System.exit(1);
+                            }
+                            timeout = Duration.ofMillis(Long.parseLong(args[++i]));
+                        }
                         default -> {
                             System.err.println("Unknown option: " + args[i]);
                             System.exit(1);
@@ -47,7 +86,14 @@ public class Main {
                     System.exit(1);
                 }
 
-                Interpreter interpreter = new Interpreter(debug, highlight, testModules);
+                //Cycles are found by the positions of the eager machine, the lazy strategy has none
+                if (detectCycles && strategy == Strategy.LAZY) {
+                    System.err.println("Error: -cy (cycle detection) is not supported with -l (lazy evaluation).");
+                    System.exit(1);
+                }
+
+                Interpreter interpreter = new Interpreter(debug, highlight, testModules, specialized, memoizeAll, strategy, jobs,
+                        detectCycles, maxSteps, timeout);
                 interpreter.interpret(Path.of(fileArg));
                 break;
 
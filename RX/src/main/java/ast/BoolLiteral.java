@@ -1,6 +1,14 @@
 package ast;
 
 public record BoolLiteral(boolean value) implements Literal {
+    public static final BoolLiteral TRUE = new BoolLiteral(true);
+    public static final BoolLiteral FALSE = new BoolLiteral(false);
+
+    //Shared instances, so comparisons do not allocate
+    public static BoolLiteral of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
     @Override
     public String toString(){
         return String.valueOf(value);
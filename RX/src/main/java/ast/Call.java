@@ -1,22 +1,126 @@
 package ast;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Objects;
 
-public record Call(String namespace, String function, List<Expr> arguments) implements Expr {
+//Not a record, so the hash can be cached and interned instances can be compared by reference (see TermFactory)
+public final class Call implements Expr {
+    private final String namespace;
+    private final String function;
+    private final List<Expr> arguments;
+    //Without the hash of the arguments if it is computed on demand
+    private final int hash;
+    private final boolean lazyHash;
+    //Generation of the TermFactory table holding this instance, 0 if it was never interned
+    int epoch;
+    //Set by the evaluator once the term is known to be in normal form
+    private boolean normal;
+
+    public Call(String namespace, String function, List<Expr> arguments) {
+        this(namespace, function, arguments, false);
+    }
+
+    //For argument lists whose hash is cheap to get on demand but expensive to compute up front (see PackedList)
+    Call(String namespace, String function, List<Expr> arguments, boolean lazyHash) {
+        this.namespace = namespace;
+        this.function = function;
+        this.arguments = arguments;
+        int hash = 31 * (31 * Objects.hashCode(namespace) + function.hashCode());
+        this.hash = lazyHash ? hash : hash + arguments.hashCode();
+        this.lazyHash = lazyHash;
+    }
+
+    public String namespace() {
+        return namespace;
+    }
+
+    public String function() {
+        return function;
+    }
+
+    public List<Expr> arguments() {
+        return arguments;
+    }
+
+    public boolean isInterned() {
+        return epoch != 0 && epoch == TermFactory.epoch();
+    }
+
+    public boolean isNormal() {
+        return normal;
+    }
+
+    public Call markNormal() {
+        normal = true;
+        return this;
+    }
+
+    //Iterative, so comparing long lists does not overflow the Java stack
     @Override
-    public String toString(){
-        return (namespace != null ? namespace + "." : "") + function + getArgumentsString();
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Call other) || !sameNode(other)) return false;
+
+        Deque<Expr> pending = new ArrayDeque<>();
+        pushArguments(this, other, pending);
+        while (!pending.isEmpty()) {
+            Expr left = pending.pop();
+            Expr right = pending.pop();
+            if (left == right) continue;
+            if (left instanceof Call l) {
+                if (!(right instanceof Call r) || !l.sameNode(r)) return false;
+                pushArguments(l, r, pending);
+            } else if (!left.equals(right)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Compares everything but the arguments
+    private boolean sameNode(Call other) {
+        if (hashCode() != other.hashCode()) return false;
+        //Two different terms interned in the same table can never be structurally equal
+        if (epoch != 0 && epoch == other.epoch) return false;
+        return function.equals(other.function)
+                && Objects.equals(namespace, other.namespace)
+                && arguments.size() == other.arguments.size();
     }
 
-    private String getArgumentsString(){
-        StringBuilder arguments = new StringBuilder();
-        arguments.append("(");
-        for(Expr arg : this.arguments){
-            arguments.append(arg.toString());
-            arguments.append(", ");
+    private static void pushArguments(Call left, Call right, Deque<Expr> pending) {
+        for (int i = 0; i < left.arguments.size(); i++) {
+            pending.push(right.arguments.get(i));
+            pending.push(left.arguments.get(i));
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return lazyHash ? hash + arguments.hashCode() : hash;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        //Calls still to print and the separators between them
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof Call call) {
+                if (call.namespace != null) sb.append(call.namespace).append('.');
+                sb.append(call.function).append('(');
+                pending.push(")");
+                for (int i = call.arguments.size() - 1; i >= 0; i--) {
+                    pending.push(call.arguments.get(i));
+                    if (i > 0) pending.push(", ");
+                }
+            } else {
+                sb.append(item);
+            }
         }
-        if(arguments.length() > 1) arguments.delete(arguments.length() - 2, arguments.length());
-        arguments.append(")");
-        return arguments.toString();
+        return sb.toString();
     }
 }
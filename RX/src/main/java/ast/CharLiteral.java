@@ -1,6 +1,25 @@
 package ast;
 
 public record CharLiteral(char value) implements Literal {
+    private static final CharLiteral[] ASCII = new CharLiteral[128];
+
+    static {
+        for (char c = 0; c < ASCII.length; c++) {
+            ASCII[c] = new CharLiteral(c);
+        }
+    }
+
+    //Shared instances for ASCII, so exploded strings do not allocate a literal per char
+    public static CharLiteral of(char value) {
+        return value < ASCII.length ? ASCII[value] : new CharLiteral(value);
+    }
+
+    //Fixed, so the hashes of char lists can be computed from the chars alone (see PackedList)
+    @Override
+    public int hashCode() {
+        return Character.hashCode(value);
+    }
+
     @Override
     public String toString(){
         return "'" + value + "'";
@@ -1,4 +1,4 @@
 package ast;
 
-public sealed interface Expr extends TopLevelItem permits Call, Literal, Var {
+public sealed interface Expr extends TopLevelItem permits Call, Literal, Var, Thunk {
 }
@@ -0,0 +1,240 @@
+package ast;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Persistent hash array mapped trie.
+ * Every level uses 5 bits of the hash; an update copies only the nodes on the path to the changed entry
+ * and shares all other nodes with the previous version, so get, put and remove are O(log32 n).
+ */
+final class HashTrie<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final HashTrie<?, ?> EMPTY = new HashTrie<>(null, 0);
+
+    private record Entry(Object key, Object value, int hash) {
+    }
+
+    private final Node root;
+    private final int size;
+
+    private HashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrie<K, V> empty() {
+        return (HashTrie<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return root == null ? null : (V) root.get(key, key.hashCode(), 0);
+    }
+
+    HashTrie<K, V> put(K key, V value) {
+        int[] added = new int[1];
+        Node start = root == null ? new Bitmap(0, new Object[0]) : root;
+        Node updated = start.put(new Entry(key, value, key.hashCode()), 0, added);
+        return updated == root ? this : new HashTrie<>(updated, size + added[0]);
+    }
+
+    HashTrie<K, V> remove(K key) {
+        if (root == null) return this;
+        Node updated = root.remove(key, key.hashCode(), 0);
+        if (updated == root) return this;
+        return size == 1 ? empty() : new HashTrie<>(updated, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<K, V> action) {
+        if (root != null) root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    private sealed interface Node permits Bitmap, Collision {
+        Object get(Object key, int hash, int shift);
+
+        //Sets added[0] to 1 if the key was not present yet
+        Node put(Entry entry, int shift, int[] added);
+
+        //Returns this if the key is not present, null if the node becomes empty
+        Node remove(Object key, int hash, int shift);
+
+        void forEach(BiConsumer<Object, Object> action);
+
+        //The only entry of the node, null if it has more
+        Entry single();
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    //Node holding two entries whose hashes are equal up to the shift
+    private static Node merge(Entry a, Entry b, int shift) {
+        if (a.hash() == b.hash()) return new Collision(a.hash(), new Entry[]{a, b});
+        int bitA = bit(a.hash(), shift);
+        int bitB = bit(b.hash(), shift);
+        if (bitA == bitB) return new Bitmap(bitA, new Object[]{merge(a, b, shift + BITS)});
+        return new Bitmap(bitA | bitB, bitA < bitB ? new Object[]{a, b} : new Object[]{b, a});
+    }
+
+    //Slots hold an entry or a child node, ordered by the hash fragment that the bitmap marks
+    private record Bitmap(int bitmap, Object[] slots) implements Node {
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object get(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            Object slot = slots[index(bit)];
+            if (slot instanceof Entry entry) {
+                return entry.hash() == hash && entry.key().equals(key) ? entry.value() : null;
+            }
+            return ((Node) slot).get(key, hash, shift + BITS);
+        }
+
+        @Override
+        public Node put(Entry entry, int shift, int[] added) {
+            int bit = bit(entry.hash(), shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = 1;
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                copy[index] = entry;
+                System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+                return new Bitmap(bitmap | bit, copy);
+            }
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Entry existing) {
+                if (existing.hash() == entry.hash() && existing.key().equals(entry.key())) {
+                    if (existing.value() == entry.value()) return this;
+                    replacement = entry;
+                } else {
+                    added[0] = 1;
+                    replacement = merge(existing, entry, shift + BITS);
+                }
+            } else {
+                Node child = (Node) slot;
+                replacement = child.put(entry, shift + BITS, added);
+                if (replacement == child) return this;
+            }
+            return new Bitmap(bitmap, with(index, replacement));
+        }
+
+        @Override
+        public Node remove(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Entry entry) {
+                if (entry.hash() != hash || !entry.key().equals(key)) return this;
+                return without(bit, index);
+            }
+            Node child = (Node) slot;
+            Node updated = child.remove(key, hash, shift + BITS);
+            if (updated == child) return this;
+            if (updated == null) return without(bit, index);
+            //A child with a single entry is replaced by the entry, so the trie stays as flat as possible
+            Entry single = updated.single();
+            return new Bitmap(bitmap, with(index, single != null ? single : updated));
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (Object slot : slots) {
+                if (slot instanceof Entry entry) action.accept(entry.key(), entry.value());
+                else ((Node) slot).forEach(action);
+            }
+        }
+
+        @Override
+        public Entry single() {
+            return slots.length == 1 && slots[0] instanceof Entry entry ? entry : null;
+        }
+
+        private Object[] with(int index, Object slot) {
+            Object[] copy = slots.clone();
+            copy[index] = slot;
+            return copy;
+        }
+
+        private Node without(int bit, int index) {
+            if (slots.length == 1) return null;
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+            return new Bitmap(bitmap & ~bit, copy);
+        }
+    }
+
+    //Entries whose keys have exactly the same hash
+    private record Collision(int hash, Entry[] entries) implements Node {
+        @Override
+        public Object get(Object key, int hash, int shift) {
+            if (hash != this.hash) return null;
+            for (Entry entry : entries) {
+                if (entry.key().equals(key)) return entry.value();
+            }
+            return null;
+        }
+
+        @Override
+        public Node put(Entry entry, int shift, int[] added) {
+            if (entry.hash() != hash) {
+                //The hashes differ in a later fragment, so the collision moves one level down
+                return new Bitmap(bit(hash, shift), new Object[]{this}).put(entry, shift, added);
+            }
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key().equals(entry.key())) {
+                    if (entries[i].value() == entry.value()) return this;
+                    Entry[] copy = entries.clone();
+                    copy[i] = entry;
+                    return new Collision(hash, copy);
+                }
+            }
+            added[0] = 1;
+            Entry[] copy = Arrays.copyOf(entries, entries.length + 1);
+            copy[entries.length] = entry;
+            return new Collision(hash, copy);
+        }
+
+        @Override
+        public Node remove(Object key, int hash, int shift) {
+            if (hash != this.hash) return this;
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key().equals(key)) {
+                    if (entries.length == 1) return null;
+                    Entry[] copy = new Entry[entries.length - 1];
+                    System.arraycopy(entries, 0, copy, 0, i);
+                    System.arraycopy(entries, i + 1, copy, i, entries.length - i - 1);
+                    return new Collision(hash, copy);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public Entry single() {
+            return entries.length == 1 ? entries[0] : null;
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (Entry entry : entries) {
+                action.accept(entry.key(), entry.value());
+            }
+        }
+    }
+}
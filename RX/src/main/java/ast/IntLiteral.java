@@ -1,13 +1,97 @@
 package ast;
 
-public record IntLiteral(int value) implements Literal {
+import java.math.BigInteger;
+
+/**
+ * Integer of arbitrary size.
+ * Values in the long range are stored as a long and only larger ones as a BigInteger, so every value has
+ * exactly one representation and equality stays a field comparison. Small values are shared: of() returns
+ * cached instances, so arithmetic loops do not allocate a literal per step.
+ */
+public final class IntLiteral implements Literal {
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IntLiteral[] CACHE = new IntLiteral[CACHE_HIGH - CACHE_LOW + 1];
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IntLiteral(CACHE_LOW + i);
+        }
+    }
+
+    private final long value;
+    //Only set if the value does not fit into a long
+    private final BigInteger big;
+
+    public IntLiteral(long value) {
+        this.value = value;
+        this.big = null;
+    }
+
+    public IntLiteral(BigInteger value) {
+        boolean fits = value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0;
+        this.value = fits ? value.longValue() : 0;
+        this.big = fits ? null : value;
+    }
+
+    public static IntLiteral of(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) return CACHE[(int) value - CACHE_LOW];
+        return new IntLiteral(value);
+    }
+
+    public static IntLiteral of(BigInteger value) {
+        IntLiteral literal = new IntLiteral(value);
+        return literal.big == null ? of(literal.value) : literal;
+    }
+
+    //Decimal digits of a literal in the source
+    public static IntLiteral parse(String digits) {
+        try {
+            return of(Long.parseLong(digits));
+        } catch (NumberFormatException e) {
+            return of(new BigInteger(digits));
+        }
+    }
+
+    public boolean isLong() {
+        return big == null;
+    }
+
+    //Only for values in the long range
+    public long value() {
+        if (big != null) throw new ArithmeticException("Integer out of long range: " + big);
+        return value;
+    }
+
+    public BigInteger bigValue() {
+        return big != null ? big : BigInteger.valueOf(value);
+    }
+
+    public double doubleValue() {
+        return big != null ? big.doubleValue() : value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntLiteral other)) return false;
+        return big == null ? other.big == null && value == other.value : big.equals(other.big);
+    }
+
+    @Override
+    public int hashCode() {
+        return big == null ? Long.hashCode(value) : big.hashCode();
+    }
+
     @Override
     public String toString(){
-        return String.valueOf(value);
+        return big == null ? String.valueOf(value) : big.toString();
     }
 
     @Override
     public String asRawString() {
-        return String.valueOf(value);
+        return toString();
     }
 }
@@ -0,0 +1,28 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Conversion between Java lists and the Cons/Nil lists of RX
+public final class Lists {
+    private Lists() {
+    }
+
+    public static Expr of(List<Expr> elements) {
+        return PackedList.of(elements);
+    }
+
+    //Null if the term is not a proper Cons/Nil list
+    public static List<Expr> elements(Expr list) {
+        List<Expr> packed = PackedList.view(list);
+        if (packed != null) return new ArrayList<>(packed);
+        List<Expr> elements = new ArrayList<>();
+        while (list instanceof Call call && call.namespace() == null) {
+            if (call.function().equals("Nil") && call.arguments().isEmpty()) return elements;
+            if (!call.function().equals("Cons") || call.arguments().size() != 2) return null;
+            elements.add(call.arguments().get(0));
+            list = call.arguments().get(1);
+        }
+        return null;
+    }
+}
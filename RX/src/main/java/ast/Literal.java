@@ -1,5 +1,5 @@
 package ast;
 
-public sealed interface Literal extends Expr permits BoolLiteral, IntLiteral, FloatLiteral, StringLiteral, CharLiteral {
+public sealed interface Literal extends Expr permits BoolLiteral, IntLiteral, FloatLiteral, StringLiteral, CharLiteral, MapLiteral, SetLiteral {
     String asRawString();
 }
\ No newline at end of file
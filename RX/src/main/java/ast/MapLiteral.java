@@ -0,0 +1,125 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Native value of the Map module: a persistent hash map from ground terms to terms.
+ * An update shares all untouched nodes with the previous map. Entries remember when their key was inserted,
+ * so the list form, which is also the printed form, has the same order as the association lists of the module.
+ * Maps are only equal if they have the same entries in the same order, so equal maps also print the same.
+ */
+public final class MapLiteral implements Literal {
+    public static final MapLiteral EMPTY = new MapLiteral(HashTrie.empty(), 0, 0);
+
+    private record Slot(Expr value, long order) {
+    }
+
+    private final HashTrie<Expr, Slot> entries;
+    //Insertion order of the next new key
+    private final long next;
+    //Sum of the entry hashes, updated with every put and remove
+    private final int hash;
+
+    private MapLiteral(HashTrie<Expr, Slot> entries, long next, int hash) {
+        this.entries = entries;
+        this.next = next;
+        this.hash = hash;
+    }
+
+    //Null if the key is not present
+    public Expr get(Expr key) {
+        Slot slot = entries.get(key);
+        return slot == null ? null : slot.value();
+    }
+
+    public boolean contains(Expr key) {
+        return entries.get(key) != null;
+    }
+
+    //An existing key keeps its position
+    public MapLiteral put(Expr key, Expr value) {
+        Slot slot = entries.get(key);
+        if (slot != null && slot.value().equals(value)) return this;
+        Slot updated = new Slot(value, slot == null ? next : slot.order());
+        int updatedHash = hash + entryHash(key, value) - (slot == null ? 0 : entryHash(key, slot.value()));
+        return new MapLiteral(entries.put(key, updated), slot == null ? next + 1 : next, updatedHash);
+    }
+
+    public MapLiteral remove(Expr key) {
+        Slot slot = entries.get(key);
+        if (slot == null) return this;
+        return new MapLiteral(entries.remove(key), next, hash - entryHash(key, slot.value()));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    //Keys in insertion order
+    public List<Expr> keys() {
+        return ordered().stream().map(e -> e.get(0)).toList();
+    }
+
+    public List<Expr> values() {
+        return ordered().stream().map(e -> e.get(1)).toList();
+    }
+
+    //Association list Cons([k, v], ...) in insertion order
+    public Expr toList() {
+        return Lists.of(ordered().stream().map(Lists::of).toList());
+    }
+
+    //Null if the term is not an association list, later entries overwrite earlier ones
+    public static MapLiteral fromList(Expr list) {
+        List<Expr> pairs = Lists.elements(list);
+        if (pairs == null) return null;
+        MapLiteral map = EMPTY;
+        for (Expr pair : pairs) {
+            List<Expr> entry = Lists.elements(pair);
+            if (entry == null || entry.size() != 2) return null;
+            map = map.put(entry.get(0), entry.get(1));
+        }
+        return map;
+    }
+
+    private List<List<Expr>> ordered() {
+        List<Object[]> slots = new ArrayList<>(entries.size());
+        entries.forEach((key, slot) -> slots.add(new Object[]{key, slot}));
+        slots.sort(Comparator.comparingLong(s -> ((Slot) s[1]).order()));
+        List<List<Expr>> ordered = new ArrayList<>(slots.size());
+        for (Object[] s : slots) {
+            ordered.add(List.of((Expr) s[0], ((Slot) s[1]).value()));
+        }
+        return ordered;
+    }
+
+    private static int entryHash(Expr key, Expr value) {
+        return key.hashCode() ^ value.hashCode();
+    }
+
+    //Equal maps have the same entries in the same order, only the relative order of the keys counts
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MapLiteral other) || other.hash != hash || other.size() != size()) return false;
+        return ordered().equals(other.ordered());
+    }
+
+    //Independent of the order, maps that only differ in it are told apart by equals
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    @Override
+    public String asRawString() {
+        return toString();
+    }
+}
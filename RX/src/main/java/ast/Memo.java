@@ -0,0 +1,9 @@
+package ast;
+
+//Pragma: results of the function are cached by the evaluator
+public record Memo(String function) implements TopLevelItem {
+    @Override
+    public String toString(){
+        return "memo " + function;
+    }
+}
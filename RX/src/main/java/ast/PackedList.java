@@ -0,0 +1,210 @@
+package ast;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Cons/Nil list whose elements are stored in one array, or read from a string for exploded strings.
+ * Its cells are created on demand as Cons calls whose arguments view the elements at an offset, so pattern
+ * matching, printing and equality still see Cons(h, t) and Nil(). The hash of a cell depends on all cells
+ * after it, so the hashes of all cells are computed together the first time one is needed. Creating a cell
+ * is O(1) and native functions can work on all elements at once (see {@link #view} and {@link #string}).
+ * Chars of an exploded string are read from the rope when a cell is visited, the string is never flattened.
+ */
+public final class PackedList {
+    //Hash of a Cons call without its arguments
+    private static final int CONS_HASH = 31 * "Cons".hashCode();
+
+    //Null for exploded strings
+    private final Expr[] elements;
+    //Source of the chars of an exploded string
+    private final StringLiteral string;
+    private final int size;
+    //Term after the last element, Nil() for a proper list
+    private final Expr tail;
+    //All elements and the tail are values, so the cells are values too
+    private final boolean normal;
+    //Hash of the cell at each offset as a Cons call, the last entry is the hash of the tail; null until needed
+    private volatile int[] hashes;
+
+    private PackedList(Expr[] elements, StringLiteral string, Expr tail) {
+        this.elements = elements;
+        this.string = string;
+        this.size = elements != null ? elements.length : string.length();
+        this.tail = tail;
+        boolean normal = isNormal(tail);
+        for (int i = 0; elements != null && i < elements.length; i++) {
+            normal &= isNormal(elements[i]);
+        }
+        this.normal = normal;
+    }
+
+    public static Expr of(List<Expr> elements) {
+        return of(elements, nil());
+    }
+
+    //List of the elements followed by the tail, the tail itself if there are no elements
+    public static Expr of(List<Expr> elements, Expr tail) {
+        if (elements.isEmpty()) return tail;
+        //Interned terms are shared cell by cell, so they keep the plain representation
+        if (TermFactory.isEnabled()) return cells(elements, tail);
+        return new PackedList(elements.toArray(Expr[]::new), null, tail).first();
+    }
+
+    //List of the chars of the string, the chars are created while the list is traversed
+    public static Expr explode(StringLiteral string) {
+        if (string.length() == 0) return nil();
+        if (TermFactory.isEnabled()) {
+            return cells(string.value().chars().<Expr>mapToObj(c -> CharLiteral.of((char) c)).toList(), nil());
+        }
+        return new PackedList(null, string, nil()).first();
+    }
+
+    /**
+     * Elements from the given cell of a packed list to its end, without copying.
+     * Returns an empty list for Nil() and null for any other term, including packed lists that do not end with Nil().
+     */
+    public static List<Expr> view(Expr list) {
+        if (!(list instanceof Call call)) return null;
+        if (call.arguments() instanceof Cell cell) {
+            PackedList packed = cell.list();
+            if (!isNil(packed.tail)) return null;
+            if (packed.elements != null) {
+                return Collections.unmodifiableList(Arrays.asList(packed.elements).subList(cell.offset, packed.size));
+            }
+            return new Chars(packed.string, cell.offset);
+        }
+        return isNil(call) ? List.of() : null;
+    }
+
+    /**
+     * Remaining chars of an exploded string from the given cell on, null for any other term.
+     * The whole list gives back the original string, a suffix is a slice of it, so no chars are copied.
+     */
+    public static StringLiteral string(Expr list) {
+        if (!(list instanceof Call call) || !(call.arguments() instanceof Cell cell)) return null;
+        PackedList packed = cell.list();
+        if (packed.string == null) return null;
+        return packed.string.substring(cell.offset);
+    }
+
+    //True for the cells of packed lists
+    public static boolean isPacked(Call call) {
+        return call.arguments() instanceof Cell;
+    }
+
+    private Expr element(int index) {
+        return elements != null ? elements[index] : CharLiteral.of(string.charAt(index));
+    }
+
+    private int elementHash(int index) {
+        return elements != null ? elements[index].hashCode() : Character.hashCode(string.charAt(index));
+    }
+
+    //Same hashes as new Call(null, "Cons", List.of(element(i), cell at i + 1)), computed from the last cell on
+    private int[] hashes() {
+        int[] hashes = this.hashes;
+        if (hashes == null) {
+            hashes = new int[size + 1];
+            hashes[size] = tail.hashCode();
+            for (int i = size - 1; i >= 0; i--) {
+                hashes[i] = CONS_HASH + 31 * (31 + elementHash(i)) + hashes[i + 1];
+            }
+            this.hashes = hashes;
+        }
+        return hashes;
+    }
+
+    private Expr first() {
+        return cell(0);
+    }
+
+    private Expr cell(int offset) {
+        if (offset == size) return tail;
+        Call cell = new Call(null, "Cons", new Cell(offset), true);
+        return normal ? cell.markNormal() : cell;
+    }
+
+    private static Expr cells(List<Expr> elements, Expr tail) {
+        Expr list = tail;
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            list = TermFactory.call(null, "Cons", List.of(elements.get(i), list));
+        }
+        return list;
+    }
+
+    private static Expr nil() {
+        return TermFactory.call(null, "Nil", List.of()).markNormal();
+    }
+
+    private static boolean isNil(Expr expr) {
+        return expr instanceof Call call && call.namespace() == null
+                && call.function().equals("Nil") && call.arguments().isEmpty();
+    }
+
+    private static boolean isNormal(Expr expr) {
+        return expr instanceof Literal || expr instanceof Call call && call.isNormal();
+    }
+
+    //Arguments (head, tail) of the cell at the offset, the tail cell is created once on first access
+    private final class Cell extends AbstractList<Expr> implements RandomAccess {
+        private final int offset;
+        private Expr rest;
+
+        private Cell(int offset) {
+            this.offset = offset;
+        }
+
+        private PackedList list() {
+            return PackedList.this;
+        }
+
+        @Override
+        public Expr get(int index) {
+            if (index == 0) return element(offset);
+            if (index != 1) throw new IndexOutOfBoundsException(index);
+            Expr rest = this.rest;
+            if (rest == null) {
+                rest = cell(offset + 1);
+                this.rest = rest;
+            }
+            return rest;
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+
+        //Hash of the arguments, the Cons call adds the hash of its name (see hashes())
+        @Override
+        public int hashCode() {
+            return hashes()[offset] - CONS_HASH;
+        }
+    }
+
+    //Chars of an exploded string from an offset on
+    private static final class Chars extends AbstractList<Expr> implements RandomAccess {
+        private final StringLiteral string;
+        private final int offset;
+
+        private Chars(StringLiteral string, int offset) {
+            this.string = string;
+            this.offset = offset;
+        }
+
+        @Override
+        public Expr get(int index) {
+            return CharLiteral.of(string.charAt(offset + Objects.checkIndex(index, size())));
+        }
+
+        @Override
+        public int size() {
+            return string.length() - offset;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Native value of the Set module: a persistent hash set of ground terms.
+ * Elements remember when they were inserted, so the list form, which is also the printed form, has the same
+ * order as the list sets of the module. Union, intersection and difference work on the whole set at once.
+ * Sets are only equal if they have the same elements in the same order, so equal sets also print the same.
+ */
+public final class SetLiteral implements Literal {
+    public static final SetLiteral EMPTY = new SetLiteral(HashTrie.empty(), 0, 0);
+
+    //Element -> insertion order
+    private final HashTrie<Expr, Long> elements;
+    //Insertion order of the next new element
+    private final long next;
+    //Sum of the element hashes, updated with every insert and removal
+    private final int hash;
+
+    private SetLiteral(HashTrie<Expr, Long> elements, long next, int hash) {
+        this.elements = elements;
+        this.next = next;
+        this.hash = hash;
+    }
+
+    public static SetLiteral of(Expr element) {
+        return EMPTY.insert(element);
+    }
+
+    public boolean contains(Expr element) {
+        return elements.get(element) != null;
+    }
+
+    //A new element is appended, an existing one keeps its position
+    public SetLiteral insert(Expr element) {
+        if (contains(element)) return this;
+        return new SetLiteral(elements.put(element, next), next + 1, hash + element.hashCode());
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    //Elements of this set appended to the other set, in the order of this set
+    public SetLiteral union(SetLiteral other) {
+        if (other.size() == 0) return this;
+        SetLiteral union = other;
+        for (Expr element : elements()) {
+            union = union.insert(element);
+        }
+        return union;
+    }
+
+    //Elements of this set that the other set contains, in the order of this set
+    public SetLiteral intersect(SetLiteral other) {
+        HashTrie<Expr, Long> kept = elements;
+        int keptHash = hash;
+        for (Expr element : unordered()) {
+            if (!other.contains(element)) {
+                kept = kept.remove(element);
+                keptHash -= element.hashCode();
+            }
+        }
+        return kept == elements ? this : new SetLiteral(kept, next, keptHash);
+    }
+
+    //Elements of this set that the other set does not contain, in the order of this set
+    public SetLiteral difference(SetLiteral other) {
+        HashTrie<Expr, Long> kept = elements;
+        int keptHash = hash;
+        //Removing goes over the smaller of both sets
+        for (Expr element : other.size() < size() ? other.unordered() : unordered()) {
+            if (contains(element) && other.contains(element)) {
+                kept = kept.remove(element);
+                keptHash -= element.hashCode();
+            }
+        }
+        return kept == elements ? this : new SetLiteral(kept, next, keptHash);
+    }
+
+    //Elements in insertion order
+    public List<Expr> elements() {
+        List<Object[]> entries = new ArrayList<>(elements.size());
+        elements.forEach((element, order) -> entries.add(new Object[]{element, order}));
+        entries.sort(Comparator.comparingLong(e -> (Long) e[1]));
+        List<Expr> ordered = new ArrayList<>(entries.size());
+        for (Object[] entry : entries) {
+            ordered.add((Expr) entry[0]);
+        }
+        return ordered;
+    }
+
+    //Cons list in insertion order
+    public Expr toList() {
+        return Lists.of(elements());
+    }
+
+    //Set with the elements in list order, null if the term is not a proper list
+    public static SetLiteral fromList(Expr list) {
+        List<Expr> elements = Lists.elements(list);
+        if (elements == null) return null;
+        SetLiteral set = EMPTY;
+        for (Expr element : elements) {
+            set = set.insert(element);
+        }
+        return set;
+    }
+
+    private List<Expr> unordered() {
+        List<Expr> unordered = new ArrayList<>(elements.size());
+        elements.forEach((element, order) -> unordered.add(element));
+        return unordered;
+    }
+
+    //Equal sets have the same elements in the same order, only the relative order of the elements counts
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SetLiteral other) || other.hash != hash || other.size() != size()) return false;
+        return elements().equals(other.elements());
+    }
+
+    //Independent of the order, sets that only differ in it are told apart by equals
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    @Override
+    public String asRawString() {
+        return toString();
+    }
+}
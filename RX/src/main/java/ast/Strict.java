@@ -0,0 +1,16 @@
+package ast;
+
+import java.util.List;
+
+//Pragma: arguments marked with ! are evaluated before the call, the others are passed unevaluated
+public record Strict(String function, List<Boolean> arguments) implements TopLevelItem {
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder("strict " + function + "(");
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(arguments.get(i) ? "!" : "_");
+        }
+        return sb.append(")").toString();
+    }
+}
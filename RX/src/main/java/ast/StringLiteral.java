@@ -1,13 +1,176 @@
 package ast;
 
-public record StringLiteral(String value) implements Literal {
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * String stored as a rope: either a flat piece or the concatenation of two ropes.
+ * The concatenation tree is kept balanced like an AVL tree, so concat, charAt, substring and length are
+ * O(log n) and repeated concatenation is not quadratic. A piece can be a slice of a longer string, so a
+ * suffix shares the chars of the original. The flat string is only built when it is needed
+ * (printing, value(), equality), and cached after that.
+ */
+public final class StringLiteral implements Literal {
+    //Pieces up to this length are copied into one flat piece instead of creating a node
+    private static final int MAX_PIECE = 256;
+
+    //Null for flat pieces
+    private final StringLiteral left;
+    private final StringLiteral right;
+    //Flat pieces are the chars [start, start + length) of the text, null for concatenations
+    private final String text;
+    private final int start;
+    private final int length;
+    private final int height;
+    //Flat string, built lazily for concatenations and slices
+    private String value;
+    //0 if not computed yet (like String.hashCode)
+    private int hash;
+
+    public StringLiteral(String value) {
+        this(value, 0, value.length());
+        this.value = value;
+    }
+
+    private StringLiteral(String text, int start, int length) {
+        this.left = null;
+        this.right = null;
+        this.text = text;
+        this.start = start;
+        this.length = length;
+        this.height = 0;
+    }
+
+    private StringLiteral(StringLiteral left, StringLiteral right) {
+        this.left = left;
+        this.right = right;
+        this.text = null;
+        this.start = 0;
+        this.length = Math.addExact(left.length, right.length);
+        this.height = Math.max(left.height, right.height) + 1;
+    }
+
+    public static StringLiteral concat(StringLiteral a, StringLiteral b) {
+        if (a.length == 0) return b;
+        if (b.length == 0) return a;
+        if (a.length + b.length <= MAX_PIECE) return new StringLiteral(a.value() + b.value());
+        if (a.height > b.height + 1) return balance(a.left, concat(a.right, b));
+        if (b.height > a.height + 1) return balance(concat(a, b.left), b.right);
+        return new StringLiteral(a, b);
+    }
+
+    //Node of two ropes whose heights differ by at most 2, rotated if they differ by 2
+    private static StringLiteral balance(StringLiteral a, StringLiteral b) {
+        if (a.height > b.height + 1) {
+            if (a.left.height >= a.right.height) return new StringLiteral(a.left, new StringLiteral(a.right, b));
+            return new StringLiteral(new StringLiteral(a.left, a.right.left), new StringLiteral(a.right.right, b));
+        }
+        if (b.height > a.height + 1) {
+            if (b.right.height >= b.left.height) return new StringLiteral(new StringLiteral(a, b.left), b.right);
+            return new StringLiteral(new StringLiteral(a, b.left.left), new StringLiteral(b.left.right, b.right));
+        }
+        return new StringLiteral(a, b);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    //Chars from the index to the end, without copying them
+    public StringLiteral substring(int beginIndex) {
+        if (beginIndex < 0 || beginIndex > length) throw new IndexOutOfBoundsException(beginIndex);
+        if (beginIndex == 0) return this;
+        if (left == null) return new StringLiteral(text, start + beginIndex, length - beginIndex);
+        if (beginIndex >= left.length) return right.substring(beginIndex - left.length);
+        return concat(left.substring(beginIndex), right);
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+        StringLiteral node = this;
+        while (node.left != null) {
+            if (index < node.left.length) {
+                node = node.left;
+            } else {
+                index -= node.left.length;
+                node = node.right;
+            }
+        }
+        return node.text.charAt(node.start + index);
+    }
+
+    public String value() {
+        String flat = value;
+        if (flat == null) {
+            flat = left == null ? text.substring(start, start + length) : flatten();
+            value = flat;
+        }
+        return flat;
+    }
+
+    //Iterative, so left-deep trees of an older version cannot overflow the stack
+    private String flatten() {
+        StringBuilder sb = new StringBuilder(length);
+        Deque<StringLiteral> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            StringLiteral node = pending.pop();
+            if (node.left == null) {
+                sb.append(node.text, node.start, node.start + node.length);
+            } else {
+                pending.push(node.right);
+                pending.push(node.left);
+            }
+        }
+        return sb.toString();
+    }
+
+    //Equal strings are equal regardless of their pieces
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof StringLiteral other) || other.length != length) return false;
+        if (hash != 0 && other.hash != 0 && hash != other.hash) return false;
+        return value().equals(other.value());
+    }
+
+    //Same as value().hashCode(), computed from the hashes of the children without flattening
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0 && length > 0) {
+            if (value != null) {
+                h = value.hashCode();
+            } else if (left == null) {
+                for (int i = start; i < start + length; i++) {
+                    h = 31 * h + text.charAt(i);
+                }
+            } else {
+                h = left.hashCode() * pow31(right.length) + right.hashCode();
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    private static int pow31(int exponent) {
+        int result = 1;
+        int base = 31;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) result *= base;
+            base *= base;
+            exponent >>= 1;
+        }
+        return result;
+    }
+
     @Override
     public String toString(){
-        return "\""+value+"\"";
+        return "\""+value()+"\"";
     }
 
     @Override
     public String asRawString() {
-        return value;
+        return value();
     }
 }
@@ -0,0 +1,148 @@
+package ast;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in hash-consing of terms.
+ * While enabled, calls created through this factory are interned in a weak, concurrent table, so structurally
+ * equal terms are the same object, equality of interned terms is a reference check and repeated subterms share
+ * memory. Terms that are no longer referenced anywhere else are removed from the table by the garbage collector.
+ */
+public final class TermFactory {
+
+    private static volatile boolean enabled = false;
+    //Incremented whenever the table is cleared, terms interned before are no longer shared instances
+    private static volatile int epoch = 1;
+
+    private static final ConcurrentHashMap<Key, WeakKey> TABLE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Expr> QUEUE = new ReferenceQueue<>();
+
+    private TermFactory() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        TermFactory.enabled = enabled;
+        if (!enabled) {
+            epoch++;
+            TABLE.clear();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    static int epoch() {
+        return epoch;
+    }
+
+    public static Call call(String namespace, String function, List<Expr> arguments) {
+        return (Call) intern(new Call(namespace, function, arguments));
+    }
+
+    //Returns the shared instance of the term (variables are not interned), or the term itself while disabled
+    public static Expr intern(Expr expr) {
+        if (!enabled) return expr;
+        return switch (expr) {
+            case Var var -> var;
+            case Thunk thunk -> thunk;
+            case Literal literal -> lookup(literal);
+            //Packed lists are only built while interning is disabled, interning them would unpack the whole list
+            case Call call when PackedList.isPacked(call) -> call;
+            case Call call -> {
+                if (call.epoch == epoch) yield call;
+
+                List<Expr> arguments = new ArrayList<>(call.arguments().size());
+                boolean changed = false;
+                for (Expr arg : call.arguments()) {
+                    Expr interned = intern(arg);
+                    changed |= interned != arg;
+                    arguments.add(interned);
+                }
+                Call candidate = changed ? new Call(call.namespace(), call.function(), List.copyOf(arguments)) : call;
+                yield lookup(candidate);
+            }
+        };
+    }
+
+    public static int size() {
+        expunge();
+        return TABLE.size();
+    }
+
+    private static <T extends Expr> T lookup(T expr) {
+        expunge();
+        WeakKey existing = TABLE.get(new LookupKey(expr));
+        while (true) {
+            if (existing != null) {
+                Expr shared = existing.get();
+                if (shared != null) {
+                    @SuppressWarnings("unchecked")
+                    T result = (T) shared;
+                    return result;
+                }
+                TABLE.remove(existing, existing);
+            }
+            WeakKey key = new WeakKey(expr, QUEUE);
+            existing = TABLE.putIfAbsent(key, key);
+            if (existing == null) {
+                //Only the instance in the table may be marked, otherwise two equal terms would compare unequal
+                if (expr instanceof Call call) call.epoch = epoch;
+                return expr;
+            }
+        }
+    }
+
+    private static void expunge() {
+        Object cleared;
+        while ((cleared = QUEUE.poll()) != null) {
+            TABLE.remove(cleared, cleared);
+        }
+    }
+
+    private interface Key {
+        Expr term();
+    }
+
+    private record LookupKey(Expr term) implements Key {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && term.equals(key.term());
+        }
+
+        @Override
+        public int hashCode() {
+            return term.hashCode();
+        }
+    }
+
+    private static final class WeakKey extends WeakReference<Expr> implements Key {
+        private final int hash;
+
+        WeakKey(Expr term, ReferenceQueue<Expr> queue) {
+            super(term, queue);
+            this.hash = term.hashCode();
+        }
+
+        @Override
+        public Expr term() {
+            return get();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            Expr term = get();
+            return term != null && o instanceof Key key && term.equals(key.term());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
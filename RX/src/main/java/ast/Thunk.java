@@ -0,0 +1,53 @@
+package ast;
+
+import java.util.function.BiFunction;
+
+/**
+ * Delayed argument of the lazy evaluation strategy.
+ * The expression is evaluated at most once, every occurrence of the thunk shares the result.
+ */
+public final class Thunk implements Expr {
+    private Expr expr;
+    private final String context;
+    private Expr value;
+
+    public Thunk(Expr expr, String context) {
+        this.expr = expr;
+        this.context = context;
+    }
+
+    public String context() {
+        return context;
+    }
+
+    public boolean isForced() {
+        return value != null;
+    }
+
+    //Delayed expression, null once the thunk is forced
+    public Expr expr() {
+        return expr;
+    }
+
+    //Value of the expression, null while the thunk is not forced
+    public Expr value() {
+        return value;
+    }
+
+    //A forced thunk can be set again to a further evaluated value, e.g. its normal form
+    public void set(Expr value) {
+        this.value = value;
+        //The delayed expression is not needed anymore
+        expr = null;
+    }
+
+    public Expr force(BiFunction<Expr, String, Expr> evaluate) {
+        if (value == null) set(evaluate.apply(expr, context));
+        return value;
+    }
+
+    @Override
+    public String toString(){
+        return value != null ? value.toString() : expr.toString();
+    }
+}
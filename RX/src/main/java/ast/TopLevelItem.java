@@ -1,4 +1,4 @@
 package ast;
 
-public sealed interface TopLevelItem permits Expr, Rule, Import {
+public sealed interface TopLevelItem permits Expr, Rule, Import, Memo, Strict {
 }
@@ -0,0 +1,416 @@
+package engine;
+
+import ast.*;
+import engine.NativeRuleRegistry.NativeOperation;
+import modules.RuleKey;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Compiled form of all rules of one (function, arity) bucket.
+ * The patterns are turned into a decision tree that switches on literal values and
+ * constructor heads position by position, so every argument position is inspected at most once.
+ * Rules are still selected first-match in declaration order.
+ */
+public class DecisionTree {
+
+    public record Match(CompiledRule compiled, Expr[] slots) {
+        public Rule rule() {
+            return compiled.rule();
+        }
+
+        public Expr instantiate() {
+            return instantiate(new int[1]);
+        }
+
+        //folded[0] counts the native calls answered while building the replacement (see Template)
+        public Expr instantiate(int[] folded) {
+            return compiled.replacement().instantiate(slots, folded);
+        }
+
+        //Only needed for debugging and tests, the engine works on the slots directly
+        public Map<String, Expr> bindings() {
+            Map<String, Expr> bindings = new HashMap<>();
+            for (int i = 0; i < slots.length; i++) {
+                bindings.put(compiled.names()[i], slots[i]);
+            }
+            return bindings;
+        }
+    }
+
+    //Pattern variables are numbered in order of appearance, the replacement refers to them by that number
+    public record CompiledRule(Rule rule, String[] names, Template replacement) {
+    }
+
+    private sealed interface Node permits Fail, Leaf, Switch, LiteralTest, ConstructorTest {
+    }
+
+    private record Fail() implements Node {
+    }
+
+    //Non-linear patterns (same variable twice) are checked at the leaf; if that fails, the fallback is tried.
+    //Variables at positions a switch inspected are bound to the forced value
+    private record Leaf(CompiledRule rule, int[][] paths, int[] slots, boolean[] forced, Node fallback) implements Node {
+    }
+
+    private record Switch(int[] path, Map<Literal, Node> literals, Map<RuleKey, Node> constructors,
+                          Node otherwise) implements Node {
+    }
+
+    //Specialized single-branch switches, only produced by specialize()
+    private record LiteralTest(int[] path, Literal value, Node then, Node otherwise) implements Node {
+    }
+
+    private record ConstructorTest(int[] path, String function, int arity, Node then, Node otherwise) implements Node {
+    }
+
+    private record Binding(String name, int[] path, boolean forced) {
+    }
+
+    //Pattern terms: a variable (name == null for wildcards), a literal or a constructor with sub-patterns
+    private sealed interface Term permits VarTerm, LitTerm, ConTerm {
+    }
+
+    private record VarTerm(String name) implements Term {
+    }
+
+    private record LitTerm(Literal value) implements Term {
+    }
+
+    private record ConTerm(RuleKey key, List<Term> arguments) implements Term {
+    }
+
+    private record Row(CompiledRule rule, List<Term> columns, List<Binding> bindings) {
+    }
+
+    private final List<Rule> rules;
+    private final Node root;
+    private final boolean constructor;
+
+    private DecisionTree(List<Rule> rules, Node root) {
+        this.rules = rules;
+        this.root = root;
+        //The identity rule matches every call, so the rules after it are never used
+        this.constructor = !rules.isEmpty() && isConstructorRule(rules.getFirst());
+    }
+
+    public List<Rule> rules() {
+        return rules;
+    }
+
+    //Calls of a constructor are data: they always match and rewrite to themselves
+    public boolean isConstructor() {
+        return constructor;
+    }
+
+    //Identity rules like Cons(h, t) = Cons(h, t) with distinct variables declare a constructor
+    public static boolean isConstructorRule(Rule rule) {
+        if (!(rule.replacement() instanceof Call call) || call.namespace() != null
+                || !call.function().equals(rule.pattern().name())
+                || call.arguments().size() != rule.pattern().arguments().size()) {
+            return false;
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < call.arguments().size(); i++) {
+            if (!(rule.pattern().arguments().get(i) instanceof PatternVar var)
+                    || !(call.arguments().get(i) instanceof Var arg)
+                    || !var.name().equals(arg.name())
+                    || !names.add(var.name())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static DecisionTree compile(List<Rule> rules) {
+        List<Row> rows = new ArrayList<>();
+        int arity = -1;
+        for (Rule rule : rules) {
+            List<Term> columns = new ArrayList<>();
+            for (PatternArg arg : rule.pattern().arguments()) {
+                columns.add(toTerm(arg));
+            }
+            if (arity != -1 && arity != columns.size()) {
+                throw new IllegalArgumentException("Rules of different arity cannot be compiled together: " + rule);
+            }
+            arity = columns.size();
+            rows.add(new Row(compileRule(rule), columns, List.of()));
+        }
+
+        List<int[]> paths = new ArrayList<>();
+        for (int i = 0; i < Math.max(arity, 0); i++) {
+            paths.add(new int[]{i});
+        }
+        return new DecisionTree(rules, build(rows, paths));
+    }
+
+    public Optional<Match> match(Call call) {
+        return match(call, Forcer.NONE);
+    }
+
+    //Inspected positions are forced, bound variables stay delayed
+    public Optional<Match> match(Call call, Forcer forcer) {
+        Node node = root;
+        while (true) {
+            switch (node) {
+                case Fail fail -> {
+                    return Optional.empty();
+                }
+                case Switch s -> {
+                    Expr subject = forcer.head(at(call, s.path(), forcer));
+                    Node next = null;
+                    if (subject instanceof Literal literal) {
+                        next = s.literals().get(literal);
+                    } else if (subject instanceof Call c) {
+                        next = s.constructors().get(new RuleKey(c.function(), c.arguments().size()));
+                    }
+                    node = next != null ? next : s.otherwise();
+                }
+                case LiteralTest test -> node = test.value().equals(forcer.head(at(call, test.path(), forcer)))
+                        ? test.then() : test.otherwise();
+                case ConstructorTest test -> {
+                    node = forcer.head(at(call, test.path(), forcer)) instanceof Call c && c.arguments().size() == test.arity()
+                            && c.function().equals(test.function()) ? test.then() : test.otherwise();
+                }
+                case Leaf leaf -> {
+                    Expr[] slots = new Expr[leaf.rule().names().length];
+                    if (bind(call, leaf, slots, forcer)) {
+                        return Optional.of(new Match(leaf.rule(), slots));
+                    }
+                    node = leaf.fallback();
+                }
+            }
+        }
+    }
+
+    /**
+     * Specialized variant of this tree for the specialized engine mode (-s): switches with a single branch become
+     * direct literal/constructor tests and calls that can only be answered natively are inlined into the
+     * replacement templates, except in non-strict arguments (see {@link Template#specialize}).
+     * The result is still a tree walked by {@link #match}, no code is generated. The inlined native calls
+     * are reported by {@link Match#instantiate(int[])}, so they still count as steps.
+     */
+    public DecisionTree specialize(Function<RuleKey, NativeOperation> natives, Function<RuleKey, boolean[]> strictness) {
+        return new DecisionTree(rules, specialize(root, natives, strictness));
+    }
+
+    private static Node specialize(Node node, Function<RuleKey, NativeOperation> natives,
+                                   Function<RuleKey, boolean[]> strictness) {
+        return switch (node) {
+            case Fail fail -> fail;
+            case Leaf leaf -> {
+                CompiledRule rule = leaf.rule();
+                Template replacement = rule.replacement() == null ? null : rule.replacement().specialize(natives, strictness);
+                yield new Leaf(new CompiledRule(rule.rule(), rule.names(), replacement), leaf.paths(), leaf.slots(),
+                        leaf.forced(), specialize(leaf.fallback(), natives, strictness));
+            }
+            case Switch s when s.literals().size() == 1 && s.constructors().isEmpty() -> {
+                Map.Entry<Literal, Node> branch = s.literals().entrySet().iterator().next();
+                yield new LiteralTest(s.path(), branch.getKey(), specialize(branch.getValue(), natives, strictness),
+                        specialize(s.otherwise(), natives, strictness));
+            }
+            case Switch s when s.constructors().size() == 1 && s.literals().isEmpty() -> {
+                Map.Entry<RuleKey, Node> branch = s.constructors().entrySet().iterator().next();
+                yield new ConstructorTest(s.path(), branch.getKey().function(), branch.getKey().arity(),
+                        specialize(branch.getValue(), natives, strictness), specialize(s.otherwise(), natives, strictness));
+            }
+            case Switch s -> {
+                Map<Literal, Node> literals = new HashMap<>();
+                s.literals().forEach((key, child) -> literals.put(key, specialize(child, natives, strictness)));
+                Map<RuleKey, Node> constructors = new HashMap<>();
+                s.constructors().forEach((key, child) -> constructors.put(key, specialize(child, natives, strictness)));
+                yield new Switch(s.path(), literals, constructors, specialize(s.otherwise(), natives, strictness));
+            }
+            case LiteralTest test -> test;
+            case ConstructorTest test -> test;
+        };
+    }
+
+    private static boolean bind(Call call, Leaf leaf, Expr[] slots, Forcer forcer) {
+        int[][] paths = leaf.paths();
+        for (int i = 0; i < paths.length; i++) {
+            Expr value = at(call, paths[i], forcer);
+            if (leaf.forced()[i]) value = forcer.head(value);
+            int slot = leaf.slots()[i];
+            if (slots[slot] == null) {
+                slots[slot] = value;
+            } else if (slots[slot] != value && !forcer.full(slots[slot]).equals(forcer.full(value))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Positions on the path were already inspected, so their delayed values are forced
+    private static Expr at(Call call, int[] path, Forcer forcer) {
+        Expr expr = call.arguments().get(path[0]);
+        for (int i = 1; i < path.length; i++) {
+            expr = ((Call) forcer.head(expr)).arguments().get(path[i]);
+        }
+        return expr;
+    }
+
+    private static Node build(List<Row> rows, List<int[]> paths) {
+        if (rows.isEmpty()) return new Fail();
+
+        Row first = rows.getFirst();
+        int column = -1;
+        for (int i = 0; i < first.columns().size(); i++) {
+            if (!(first.columns().get(i) instanceof VarTerm)) {
+                column = i;
+                break;
+            }
+        }
+
+        //First row only has variables left -> it matches (up to non-linear checks)
+        if (column == -1) {
+            List<Binding> bindings = new ArrayList<>(first.bindings());
+            for (int i = 0; i < first.columns().size(); i++) {
+                String name = ((VarTerm) first.columns().get(i)).name();
+                if (name != null) bindings.add(new Binding(name, paths.get(i), false));
+            }
+            Node fallback = bindings.size() == first.rule().names().length ? new Fail() : build(rows.subList(1, rows.size()), paths);
+            return toLeaf(first.rule(), bindings, fallback);
+        }
+
+        Map<Literal, Node> literals = new LinkedHashMap<>();
+        Map<RuleKey, Node> constructors = new LinkedHashMap<>();
+        for (Row row : rows) {
+            Term term = row.columns().get(column);
+            if (term instanceof LitTerm lit && !literals.containsKey(lit.value())) {
+                literals.put(lit.value(), build(specializeLiteral(rows, column, paths, lit.value()), removeColumn(paths, column)));
+            } else if (term instanceof ConTerm con && !constructors.containsKey(con.key())) {
+                constructors.put(con.key(), build(specializeConstructor(rows, column, paths, con.key()),
+                        expandColumn(paths, column, con.key().arity())));
+            }
+        }
+
+        List<Row> defaults = new ArrayList<>();
+        for (Row row : rows) {
+            if (row.columns().get(column) instanceof VarTerm var) {
+                defaults.add(withoutColumn(row, column, var, paths.get(column), List.of()));
+            }
+        }
+        return new Switch(paths.get(column), literals, constructors, build(defaults, removeColumn(paths, column)));
+    }
+
+    private static List<Row> specializeLiteral(List<Row> rows, int column, List<int[]> paths, Literal value) {
+        List<Row> result = new ArrayList<>();
+        for (Row row : rows) {
+            Term term = row.columns().get(column);
+            if (term instanceof LitTerm lit && lit.value().equals(value)) {
+                result.add(withoutColumn(row, column, null, null, List.of()));
+            } else if (term instanceof VarTerm var) {
+                result.add(withoutColumn(row, column, var, paths.get(column), List.of()));
+            }
+        }
+        return result;
+    }
+
+    private static List<Row> specializeConstructor(List<Row> rows, int column, List<int[]> paths, RuleKey key) {
+        List<Term> wildcards = Collections.nCopies(key.arity(), new VarTerm(null));
+        List<Row> result = new ArrayList<>();
+        for (Row row : rows) {
+            Term term = row.columns().get(column);
+            if (term instanceof ConTerm con && con.key().equals(key)) {
+                result.add(withoutColumn(row, column, null, null, con.arguments()));
+            } else if (term instanceof VarTerm var) {
+                result.add(withoutColumn(row, column, var, paths.get(column), wildcards));
+            }
+        }
+        return result;
+    }
+
+    //Replaces the column by the given sub-patterns and records the binding of a removed variable,
+    //the column is the one a switch inspects
+    private static Row withoutColumn(Row row, int column, VarTerm var, int[] path, List<Term> replacement) {
+        List<Term> columns = new ArrayList<>(row.columns().subList(0, column));
+        columns.addAll(replacement);
+        columns.addAll(row.columns().subList(column + 1, row.columns().size()));
+
+        List<Binding> bindings = row.bindings();
+        if (var != null && var.name() != null) {
+            bindings = new ArrayList<>(bindings);
+            bindings.add(new Binding(var.name(), path, true));
+        }
+        return new Row(row.rule(), columns, bindings);
+    }
+
+    private static List<int[]> removeColumn(List<int[]> paths, int column) {
+        return expandColumn(paths, column, 0);
+    }
+
+    private static List<int[]> expandColumn(List<int[]> paths, int column, int arity) {
+        List<int[]> result = new ArrayList<>(paths.subList(0, column));
+        int[] parent = paths.get(column);
+        for (int i = 0; i < arity; i++) {
+            int[] child = Arrays.copyOf(parent, parent.length + 1);
+            child[parent.length] = i;
+            result.add(child);
+        }
+        result.addAll(paths.subList(column + 1, paths.size()));
+        return result;
+    }
+
+    private static Leaf toLeaf(CompiledRule rule, List<Binding> bindings, Node fallback) {
+        List<String> names = List.of(rule.names());
+        int[][] paths = new int[bindings.size()][];
+        int[] slots = new int[bindings.size()];
+        boolean[] forced = new boolean[bindings.size()];
+        for (int i = 0; i < bindings.size(); i++) {
+            paths[i] = bindings.get(i).path();
+            slots[i] = names.indexOf(bindings.get(i).name());
+            forced[i] = bindings.get(i).forced();
+        }
+        return new Leaf(rule, paths, slots, forced, fallback);
+    }
+
+    private static CompiledRule compileRule(Rule rule) {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        for (PatternArg arg : rule.pattern().arguments()) {
+            if (arg instanceof PatternVar var) {
+                slots.putIfAbsent(var.name(), slots.size());
+            } else if (arg instanceof PatternExpr expr) {
+                collectVariables(expr.expr(), slots);
+            }
+        }
+        //Rules without replacement only occur in validation tests
+        Template replacement = rule.replacement() == null ? null : Template.compile(rule.replacement(), slots);
+        return new CompiledRule(rule, slots.keySet().toArray(String[]::new), replacement);
+    }
+
+    private static void collectVariables(Expr expr, Map<String, Integer> slots) {
+        if (expr instanceof Var var) {
+            slots.putIfAbsent(var.name(), slots.size());
+        } else if (expr instanceof Call call) {
+            for (Expr arg : call.arguments()) {
+                collectVariables(arg, slots);
+            }
+        }
+    }
+
+    private static Term toTerm(PatternArg arg) {
+        return switch (arg) {
+            case PatternWildcard wildcard -> new VarTerm(null);
+            case PatternVar var -> new VarTerm(var.name());
+            case PatternLiteral lit -> new LitTerm(lit.value());
+            case PatternExpr expr -> toTerm(expr.expr());
+        };
+    }
+
+    private static Term toTerm(Expr expr) {
+        return switch (expr) {
+            case Var var -> new VarTerm(var.name());
+            case Literal lit -> new LitTerm(lit);
+            case Thunk thunk -> throw new IllegalArgumentException("Delayed expression in pattern: " + thunk);
+            case Call call -> {
+                List<Term> arguments = new ArrayList<>();
+                for (Expr arg : call.arguments()) {
+                    arguments.add(toTerm(arg));
+                }
+                yield new ConTerm(new RuleKey(call.function(), arguments.size()), arguments);
+            }
+        };
+    }
+}
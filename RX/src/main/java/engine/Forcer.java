@@ -0,0 +1,27 @@
+package engine;
+
+import ast.Expr;
+
+/**
+ * Evaluates delayed arguments while a call is matched.
+ * Only the lazy evaluation strategy delays arguments, for all other calls nothing has to be forced.
+ */
+public interface Forcer {
+    Forcer NONE = new Forcer() {
+        @Override
+        public Expr head(Expr expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr full(Expr expr) {
+            return expr;
+        }
+    };
+
+    //Evaluates the expression until its head (literal or constructor) is known
+    Expr head(Expr expr);
+
+    //Evaluates the expression completely, used where the whole value is compared or consumed
+    Expr full(Expr expr);
+}
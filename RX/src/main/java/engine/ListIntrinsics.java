@@ -0,0 +1,72 @@
+package engine;
+
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Native versions of Prelude list functions for packed lists.
+ * The engine tries them before the Prelude rules of the call and only if no module overrides the function.
+ * They return null for lists built from Cons cells and for anything the rules would reject,
+ * so the rules still define every result and the intrinsics only save steps.
+ */
+class ListIntrinsics {
+    private static final String NAMESPACE = "Prelude";
+
+    List<NativeFunction> functions() {
+        return List.of(
+                intrinsic("length", 1, args -> {
+                    List<Expr> list = PackedList.view(args.get(0));
+                    return list == null ? null : IntLiteral.of(list.size());
+                }),
+                intrinsic("sum", 1, args -> sum(PackedList.view(args.get(0)))),
+                intrinsic("reverse", 1, args -> {
+                    List<Expr> list = PackedList.view(args.get(0));
+                    return list == null ? null : PackedList.of(list.reversed());
+                }),
+                intrinsic("append", 2, args -> append(PackedList.view(args.get(0)), args.get(1))),
+                intrinsic("last", 1, args -> {
+                    List<Expr> list = PackedList.view(args.get(0));
+                    return list == null || list.isEmpty() ? null : list.getLast();
+                }),
+                intrinsic("eqList", 2, args -> eqList(PackedList.view(args.get(0)), PackedList.view(args.get(1))))
+        );
+    }
+
+    //h + sum(t) adds from the last element to the first
+    private static Expr sum(List<Expr> list) {
+        if (list == null) return null;
+        NativeFunction add = NativeRuleRegistry.lookup("add", 2);
+        Expr sum = IntLiteral.of(0);
+        for (int i = list.size() - 1; i >= 0 && sum != null; i--) {
+            sum = add.apply(List.of(list.get(i), sum));
+        }
+        return sum;
+    }
+
+    private static Expr append(List<Expr> list, Expr rest) {
+        if (list == null) return null;
+        List<Expr> restElements = PackedList.view(rest);
+        if (restElements == null) return PackedList.of(list, rest);
+        List<Expr> elements = new ArrayList<>(list.size() + restElements.size());
+        elements.addAll(list);
+        elements.addAll(restElements);
+        return PackedList.of(elements);
+    }
+
+    //x == y && eqList(xs, ys) stops at the first pair that differs
+    private static Expr eqList(List<Expr> left, List<Expr> right) {
+        if (left == null || right == null) return null;
+        NativeFunction eq = NativeRuleRegistry.lookup("eq", 2);
+        for (int i = 0; i < Math.min(left.size(), right.size()); i++) {
+            if (!(eq.apply(List.of(left.get(i), right.get(i))) instanceof BoolLiteral equal)) return null;
+            if (!equal.value()) return BoolLiteral.FALSE;
+        }
+        return BoolLiteral.of(left.size() == right.size());
+    }
+
+    private static NativeFunction intrinsic(String name, int arity, NativeRuleRegistry.NativeOperation operation) {
+        return new NativeFunction(NAMESPACE, name, arity, true, operation);
+    }
+}
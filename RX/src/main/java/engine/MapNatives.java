@@ -0,0 +1,38 @@
+package engine;
+
+import ast.*;
+
+import java.util.List;
+
+/**
+ * Native functions of the Map module.
+ * They work on MapLiteral values and are only reached if no rule of the module matches, so the
+ * association list rules keep working for maps written as lists.
+ */
+public class MapNatives implements NativeRuleProvider {
+    private static final String NAMESPACE = "Map";
+
+    @Override
+    public List<NativeFunction> functions() {
+        return List.of(
+                function("emptyMap", 0, args -> MapLiteral.EMPTY),
+                function("put", 3, args -> args.get(2) instanceof MapLiteral map ? map.put(args.get(0), args.get(1)) : null),
+                function("get", 2, args -> {
+                    if (!(args.get(1) instanceof MapLiteral map)) return null;
+                    Expr value = map.get(args.get(0));
+                    return value != null ? value : Lists.of(List.of());
+                }),
+                function("contains", 2, args -> args.get(1) instanceof MapLiteral map
+                        ? BoolLiteral.of(map.contains(args.get(0))) : null),
+                function("remove", 2, args -> args.get(1) instanceof MapLiteral map ? map.remove(args.get(0)) : null),
+                function("keys", 1, args -> args.get(0) instanceof MapLiteral map ? Lists.of(map.keys()) : null),
+                function("values", 1, args -> args.get(0) instanceof MapLiteral map ? Lists.of(map.values()) : null),
+                function("toList", 1, args -> args.get(0) instanceof MapLiteral map ? map.toList() : null),
+                function("fromList", 1, args -> args.get(0) instanceof MapLiteral map ? map : MapLiteral.fromList(args.get(0)))
+        );
+    }
+
+    private static NativeFunction function(String name, int arity, NativeRuleRegistry.NativeOperation operation) {
+        return new NativeFunction(NAMESPACE, name, arity, true, operation);
+    }
+}
@@ -0,0 +1,113 @@
+package engine;
+
+import ast.*;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Native versions of hot functions of the Math module.
+ * Integer functions give exactly the results of the rules, they only skip the recursion: fact and pow multiply
+ * BigIntegers, gcd runs the same Euclidean loop (with the remainder of %), fib uses fast doubling. For float
+ * arguments sqrt and the trigonometric functions use java.lang.Math instead of the Newton iteration and Taylor
+ * series of the rules, so they are more precise. Integer arguments are left to the rules, whose exact divisions
+ * give integer results like sqrt(4) = 2, and so are arguments the rules do not end on (e.g. negative fact).
+ * An intrinsic runs as a single step, so arguments above the limits below are left to the rules as well: that
+ * keeps every step short enough for step budgets, deadlines and cancellation to stop the evaluation.
+ */
+class MathIntrinsics {
+    private static final String NAMESPACE = "Math";
+    private static final long MAX_FACT = 10_000;
+    private static final long MAX_FIB = 100_000;
+    //Bit length of base times exponent, an upper bound of the bit length of the power
+    private static final long MAX_POW_BITS = 1 << 20;
+
+    List<NativeFunction> functions() {
+        return List.of(
+                intrinsic("fact", 1, args -> {
+                    if (!(args.get(0) instanceof IntLiteral n) || !n.isLong() || n.value() < 0 || n.value() > MAX_FACT) {
+                        return null;
+                    }
+                    BigInteger fact = BigInteger.ONE;
+                    for (long i = 2; i <= n.value(); i++) {
+                        fact = fact.multiply(BigInteger.valueOf(i));
+                    }
+                    return IntLiteral.of(fact);
+                }),
+                intrinsic("fib", 1, args -> args.get(0) instanceof IntLiteral n && n.isLong() && n.value() >= 0
+                        && n.value() <= MAX_FIB ? IntLiteral.of(fib(n.value())) : null),
+                intrinsic("gcd", 2, args -> args.get(0) instanceof IntLiteral x && args.get(1) instanceof IntLiteral y
+                        ? gcd(x, y) : null),
+                intrinsic("pow", 2, args -> {
+                    if (!(args.get(1) instanceof IntLiteral exp) || !exp.isLong() || exp.value() < 0) return null;
+                    //pow(_, 0) = 1 for every base
+                    if (exp.value() == 0) return IntLiteral.of(1);
+                    if (!(args.get(0) instanceof IntLiteral base)) return null;
+                    //Bases whose powers do not grow, their bit length says nothing about the size of the exponent
+                    if (base.isLong() && Math.abs(base.value()) <= 1) {
+                        return IntLiteral.of(base.value() == -1 && exp.value() % 2 == 0 ? 1 : base.value());
+                    }
+                    if (exp.value() > Integer.MAX_VALUE
+                            || (double) base.bigValue().bitLength() * exp.value() > MAX_POW_BITS) {
+                        return null;
+                    }
+                    return IntLiteral.of(base.bigValue().pow((int) exp.value()));
+                }),
+                real("sqrt", Math::sqrt),
+                real("sin", Math::sin),
+                real("cos", Math::cos),
+                real("arcsin", Math::asin)
+        );
+    }
+
+    //F(n) from F(k) and F(k + 1): F(2k) = F(k) * (2F(k + 1) - F(k)), F(2k + 1) = F(k)^2 + F(k + 1)^2
+    private static BigInteger fib(long n) {
+        BigInteger a = BigInteger.ZERO;
+        BigInteger b = BigInteger.ONE;
+        for (int bit = 63 - Long.numberOfLeadingZeros(n); bit >= 0; bit--) {
+            BigInteger even = a.multiply(b.shiftLeft(1).subtract(a));
+            BigInteger odd = a.multiply(a).add(b.multiply(b));
+            if ((n >>> bit & 1) == 0) {
+                a = even;
+                b = odd;
+            } else {
+                a = odd;
+                b = even.add(odd);
+            }
+        }
+        return a;
+    }
+
+    //gcd(x, 0) = x, gcd(x, y) = gcd(y, x % y), so the sign of the result is the same as with the rules
+    private static Expr gcd(IntLiteral x, IntLiteral y) {
+        if (x.isLong() && y.isLong()) {
+            long a = x.value();
+            long b = y.value();
+            while (b != 0) {
+                long r = a % b;
+                a = b;
+                b = r;
+            }
+            return IntLiteral.of(a);
+        }
+        BigInteger a = x.bigValue();
+        BigInteger b = y.bigValue();
+        while (b.signum() != 0) {
+            BigInteger r = a.remainder(b);
+            a = b;
+            b = r;
+        }
+        return IntLiteral.of(a);
+    }
+
+    //The rules return floats for float arguments
+    private static NativeFunction real(String name, DoubleUnaryOperator operation) {
+        return intrinsic(name, 1, args -> args.get(0) instanceof FloatLiteral f
+                ? new FloatLiteral(operation.applyAsDouble(f.value())) : null);
+    }
+
+    private static NativeFunction intrinsic(String name, int arity, NativeRuleRegistry.NativeOperation operation) {
+        return new NativeFunction(NAMESPACE, name, arity, true, operation);
+    }
+}
@@ -0,0 +1,28 @@
+package engine;
+
+import ast.Expr;
+import engine.NativeRuleRegistry.NativeOperation;
+
+import java.util.List;
+
+/**
+ * A function implemented in Java. Built-in functions have no namespace, functions of plugins
+ * always belong to a namespace and are only reachable from it (e.g. {@code Hash.fnv(x)} after {@code import Hash}).
+ * Pure functions always return the same result for the same arguments and have no side effects.
+ * Calls of impure functions are never forked by the parallel strategy, and results computed with them are not memoized.
+ */
+public record NativeFunction(String namespace, String name, int arity, boolean pure, NativeOperation operation) {
+
+    public Expr apply(List<Expr> args) {
+        return operation.apply(args);
+    }
+
+    public String qualifiedName() {
+        return (namespace != null ? namespace + "." : "") + name;
+    }
+
+    @Override
+    public String toString() {
+        return qualifiedName() + "/" + arity + " (native" + (pure ? ", pure" : "") + ")";
+    }
+}
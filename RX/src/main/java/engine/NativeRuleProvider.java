@@ -0,0 +1,13 @@
+package engine;
+
+import java.util.List;
+
+/**
+ * Service interface for plugins that contribute native functions.
+ * Implementations are found with {@link java.util.ServiceLoader}, either on the classpath or in a jar
+ * inside the user modules folder, and have to be listed in
+ * {@code META-INF/services/engine.NativeRuleProvider}.
+ */
+public interface NativeRuleProvider {
+    List<NativeFunction> functions();
+}
@@ -1,131 +1,276 @@
 package engine;
 
 import ast.*;
+import modules.RuleKey;
 
-import java.util.List;
-import java.util.Optional;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 public class NativeRuleRegistry {
 
-    public static Optional<Expr> eval(Call call) {
-        String fn = call.function();
-        List<Expr> args = call.arguments();
+    /**
+     * Native implementation of one (function, arity) pair.
+     * Returns null if the arguments are not supported, so the caller can report the missing rule.
+     */
+    @FunctionalInterface
+    public interface NativeOperation {
+        Expr apply(List<Expr> args);
+    }
 
-        //String Operations
-        if (fn.equals("concat") && args.size() == 2 &&
-                args.get(0) instanceof Literal a && args.get(1) instanceof Literal b) {
-            return Optional.of(new StringLiteral(a.asRawString() + b.asRawString()));
-        }
+    //Throws an ArithmeticException if the result does not fit into a long, the operation is then repeated on BigIntegers
+    private interface LongOperation {
+        Expr apply(long a, long b);
+    }
 
-        if (fn.equals("length") && args.size() == 1 && args.get(0) instanceof StringLiteral s) {
-            return Optional.of(new IntLiteral(s.value().length()));
-        }
+    private interface BigOperation {
+        Expr apply(BigInteger a, BigInteger b);
+    }
 
-        if (fn.equals("charAt") && args.size() == 2 &&
-                args.get(0) instanceof StringLiteral s && args.get(1) instanceof IntLiteral i) {
+    private interface FloatOperation {
+        Expr apply(double a, double b);
+    }
 
-            String str = s.value();
-            int idx = i.value();
+    private static final Map<RuleKey, NativeFunction> BUILTINS = new HashMap<>();
+    //Plugin functions: namespace -> (function, arity) -> function
+    private static final Map<String, Map<RuleKey, NativeFunction>> PLUGINS = new ConcurrentHashMap<>();
+    //Native versions of module functions: namespace -> (function, arity) -> function, tried before the module's rules
+    private static final Map<String, Map<RuleKey, NativeFunction>> INTRINSICS = new HashMap<>();
+    private static final Set<RuleKey> INTRINSIC_KEYS = new HashSet<>();
+    //Off for conformance tests against the rules
+    private static volatile boolean intrinsicsEnabled = true;
+    //Set once a plugin registers a function that is not pure, built-in functions are all pure
+    private static volatile boolean impureFunctions;
+    private static final Set<Path> LOADED_PLUGIN_PATHS = ConcurrentHashMap.newKeySet();
 
-            if (idx < 0 || idx >= str.length()) {
+    static {
+        //String Operations
+        register("concat", 2, args -> args.get(0) instanceof Literal a && args.get(1) instanceof Literal b
+                ? StringLiteral.concat(string(a), string(b)) : null);
+
+        register("length", 1, args -> args.get(0) instanceof StringLiteral s
+                ? IntLiteral.of(s.length()) : null);
+
+        register("charAt", 2, args -> {
+            if (!(args.get(0) instanceof StringLiteral s) || !(args.get(1) instanceof IntLiteral i)) return null;
+
+            if (!i.isLong() || i.value() < 0 || i.value() >= s.length()) {
                 throw new RuntimeException(
-                        "Native charAt: index " + idx + " out of bounds (length " + str.length() + ")");
+                        "Native charAt: index " + i + " out of bounds (length " + s.length() + ")");
             }
 
-            return Optional.of(new CharLiteral(str.charAt(idx)));
-        }
+            return CharLiteral.of(s.charAt((int) i.value()));
+        });
 
-        if (fn.equals("explode") && args.size() == 1 && args.get(0) instanceof StringLiteral s) {
-            Expr result = stringToList(s.value());
-            return Optional.of(result);
-        }
+        register("explode", 1, args -> args.get(0) instanceof StringLiteral s ? PackedList.explode(s) : null);
+
+        register("implode", 1, args -> implode(args.get(0)));
 
         //Char Operations
-        if (fn.equals("toInt") && args.size() == 1 && args.get(0) instanceof CharLiteral c) {
-            return Optional.of(new IntLiteral(c.value()));
+        register("toInt", 1, args -> args.get(0) instanceof CharLiteral c ? IntLiteral.of(c.value()) : null);
+
+        // Generic EQ/NQ support -> literals of different types are never equal
+        register("eq", 2, args -> args.get(0) instanceof Literal a && args.get(1) instanceof Literal b
+                ? BoolLiteral.of(a.equals(b)) : null);
+        register("nq", 2, args -> args.get(0) instanceof Literal a && args.get(1) instanceof Literal b
+                ? BoolLiteral.of(!a.equals(b)) : null);
+
+        //Numeral operations (int/float mixes are promoted to float, ints that overflow a long to BigInteger)
+        numeric("add", (a, b) -> IntLiteral.of(Math.addExact(a, b)), (a, b) -> IntLiteral.of(a.add(b)),
+                (a, b) -> new FloatLiteral(a + b));
+        numeric("sub", (a, b) -> IntLiteral.of(Math.subtractExact(a, b)), (a, b) -> IntLiteral.of(a.subtract(b)),
+                (a, b) -> new FloatLiteral(a - b));
+        numeric("mul", (a, b) -> IntLiteral.of(Math.multiplyExact(a, b)), (a, b) -> IntLiteral.of(a.multiply(b)),
+                (a, b) -> new FloatLiteral(a * b));
+        numeric("div", (a, b) -> a % b != 0 ? new FloatLiteral((double) a / b) : IntLiteral.of(Math.divideExact(a, b)),
+                NativeRuleRegistry::divide, (a, b) -> new FloatLiteral(a / b));
+        numeric("mod", (a, b) -> IntLiteral.of(a % b), (a, b) -> IntLiteral.of(a.remainder(b)),
+                (a, b) -> new FloatLiteral(a % b));
+
+        numeric("lt", (a, b) -> BoolLiteral.of(a < b), (a, b) -> BoolLiteral.of(a.compareTo(b) < 0),
+                (a, b) -> BoolLiteral.of(a < b));
+        numeric("le", (a, b) -> BoolLiteral.of(a <= b), (a, b) -> BoolLiteral.of(a.compareTo(b) <= 0),
+                (a, b) -> BoolLiteral.of(a <= b));
+        numeric("gt", (a, b) -> BoolLiteral.of(a > b), (a, b) -> BoolLiteral.of(a.compareTo(b) > 0),
+                (a, b) -> BoolLiteral.of(a > b));
+        numeric("ge", (a, b) -> BoolLiteral.of(a >= b), (a, b) -> BoolLiteral.of(a.compareTo(b) >= 0),
+                (a, b) -> BoolLiteral.of(a >= b));
+
+        //Native values of the standard modules
+        new MapNatives().functions().forEach(NativeRuleRegistry::register);
+        new SetNatives().functions().forEach(NativeRuleRegistry::register);
+
+        new ListIntrinsics().functions().forEach(NativeRuleRegistry::registerIntrinsic);
+        new MathIntrinsics().functions().forEach(NativeRuleRegistry::registerIntrinsic);
+    }
+
+    //Built-in function
+    public static NativeFunction lookup(String function, int arity) {
+        return BUILTINS.get(new RuleKey(function, arity));
+    }
+
+    public static void setIntrinsicsEnabled(boolean enabled) {
+        intrinsicsEnabled = enabled;
+    }
+
+    public static boolean intrinsicsEnabled() {
+        return intrinsicsEnabled;
+    }
+
+    //True if some module has an intrinsic with the name and arity and intrinsics are enabled
+    public static boolean hasIntrinsic(String function, int arity) {
+        return intrinsicsEnabled && INTRINSIC_KEYS.contains(new RuleKey(function, arity));
+    }
+
+    //Intrinsic replacing the rules of the namespace, null if there is none or intrinsics are disabled
+    public static NativeFunction intrinsic(String namespace, String function, int arity) {
+        if (!intrinsicsEnabled) return null;
+        Map<RuleKey, NativeFunction> intrinsics = INTRINSICS.get(namespace);
+        return intrinsics == null ? null : intrinsics.get(new RuleKey(function, arity));
+    }
+
+    //Function of the namespace's plugins first, then built-in function
+    public static NativeFunction lookup(String namespace, String function, int arity) {
+        RuleKey key = new RuleKey(function, arity);
+        Map<RuleKey, NativeFunction> plugin = namespace == null ? null : PLUGINS.get(namespace);
+        NativeFunction result = plugin == null ? null : plugin.get(key);
+        return result != null ? result : BUILTINS.get(key);
+    }
+
+    public static Optional<Expr> eval(Call call) {
+        NativeFunction function = lookup(call.namespace(), call.function(), call.arguments().size());
+        if (function == null) return Optional.empty();
+        return Optional.ofNullable(function.apply(call.arguments()));
+    }
+
+    public static boolean hasImpureFunctions() {
+        return impureFunctions;
+    }
+
+    public static boolean hasNamespace(String namespace) {
+        return PLUGINS.containsKey(namespace);
+    }
+
+    //Functions of a plugin namespace, or the built-in functions for null
+    public static List<NativeFunction> functions(String namespace) {
+        Map<RuleKey, NativeFunction> functions = namespace == null ? BUILTINS : PLUGINS.getOrDefault(namespace, Map.of());
+        return functions.values().stream()
+                .sorted(Comparator.comparing(NativeFunction::name).thenComparing(NativeFunction::arity))
+                .toList();
+    }
+
+    //(function, arity) pairs that some plugin namespace defines
+    public static Set<RuleKey> pluginKeys() {
+        Set<RuleKey> keys = new HashSet<>();
+        for (Map<RuleKey, NativeFunction> functions : PLUGINS.values()) {
+            keys.addAll(functions.keySet());
         }
+        return keys;
+    }
 
-        // Generic EQ/NQ support
-        if ((fn.equals("eq") || fn.equals("nq")) && args.size() == 2) {
-            Expr a = args.get(0);
-            Expr b = args.get(1);
+    public static void register(NativeFunction function) {
+        if (function.namespace() == null || function.namespace().isBlank()) {
+            throw new RuntimeException("Native plugin function must declare a namespace: " + function.name());
+        }
+        PLUGINS.computeIfAbsent(function.namespace(), k -> new ConcurrentHashMap<>())
+                .put(new RuleKey(function.name(), function.arity()), function);
+        if (!function.pure()) impureFunctions = true;
+    }
 
-            if (a instanceof Literal la && b instanceof Literal lb) {
-                boolean equal = la.equals(lb);
-                return Optional.of(new BoolLiteral(fn.equals("eq") == equal));
+    /**
+     * Registers all {@link NativeRuleProvider} found on the classpath or in the jars of the given folder.
+     * Every folder is only scanned once.
+     */
+    public static void loadPlugins(Path pluginPath) {
+        if (!LOADED_PLUGIN_PATHS.add(pluginPath.toAbsolutePath().normalize())) return;
+
+        List<URL> jars = new ArrayList<>();
+        if (Files.isDirectory(pluginPath)) {
+            try (Stream<Path> files = Files.list(pluginPath)) {
+                for (Path jar : files.filter(f -> f.toString().endsWith(".jar")).sorted().toList()) {
+                    jars.add(jar.toUri().toURL());
+                }
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Invalid plugin path: " + pluginPath, e);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read plugin folder: " + pluginPath, e);
             }
         }
 
-        //Numeral operations
-        if (args.size() != 2) return Optional.empty();
-
-        Expr left = args.get(0);
-        Expr right = args.get(1);
-
-        //Float Promotion
-        boolean isFloat = left instanceof FloatLiteral || right instanceof FloatLiteral;
-
-        if (isFloat) {
-            double a = (left instanceof FloatLiteral f) ? f.value()
-                    : ((IntLiteral) left).value();
-            double b = (right instanceof FloatLiteral f ) ? f.value()
-                    : ((IntLiteral) right).value();
-
-            return switch (fn) {
-                case "add" -> Optional.of(new FloatLiteral(a + b));
-                case "sub" -> Optional.of(new FloatLiteral(a - b));
-                case "mul" -> Optional.of(new FloatLiteral(a * b));
-                case "div" -> Optional.of(new FloatLiteral(a / b));
-                case "mod" -> Optional.of(new FloatLiteral(a % b));
-
-                case "eq"  -> Optional.of(new BoolLiteral(a == b));
-                case "lt"  -> Optional.of(new BoolLiteral(a <  b));
-                case "le"  -> Optional.of(new BoolLiteral(a <= b));
-                case "gt"  -> Optional.of(new BoolLiteral(a >  b));
-                case "ge"  -> Optional.of(new BoolLiteral(a >= b));
-                case "nq"  -> Optional.of(new BoolLiteral(a != b));
-
-                default    -> Optional.empty();
-            };
+        ClassLoader parent = NativeRuleRegistry.class.getClassLoader();
+        ClassLoader loader = jars.isEmpty() ? parent : new URLClassLoader(jars.toArray(URL[]::new), parent);
+        for (NativeRuleProvider provider : ServiceLoader.load(NativeRuleProvider.class, loader)) {
+            provider.functions().forEach(NativeRuleRegistry::register);
         }
+    }
+
+    private static void registerIntrinsic(NativeFunction function) {
+        RuleKey key = new RuleKey(function.name(), function.arity());
+        INTRINSICS.computeIfAbsent(function.namespace(), k -> new HashMap<>()).put(key, function);
+        INTRINSIC_KEYS.add(key);
+    }
 
-        //Integer Operation
-        if (left instanceof IntLiteral l && right instanceof IntLiteral r) {
-            return switch (fn) {
-                case "add" -> Optional.of(new IntLiteral(l.value() + r.value()));
-                case "sub" -> Optional.of(new IntLiteral(l.value() - r.value()));
-                case "mul" -> Optional.of(new IntLiteral(l.value() * r.value()));
-                case "div" -> {
-                    if (l.value() % r.value() != 0) {
-                        yield Optional.of(new FloatLiteral((double) l.value() / r.value()));
-                    } else {
-                        yield Optional.of(new IntLiteral(l.value() / r.value()));
+    private static void register(String function, int arity, NativeOperation operation) {
+        BUILTINS.put(new RuleKey(function, arity), new NativeFunction(null, function, arity, true, operation));
+    }
+
+    private static void numeric(String function, LongOperation longs, BigOperation bigs, FloatOperation floats) {
+        register(function, 2, args -> {
+            Expr left = args.get(0);
+            Expr right = args.get(1);
+            if (left instanceof IntLiteral l) {
+                if (right instanceof IntLiteral r) {
+                    if (l.isLong() && r.isLong()) {
+                        try {
+                            return longs.apply(l.value(), r.value());
+                        } catch (ArithmeticException overflow) {
+                            //Repeated on BigIntegers, which also report a division by zero
+                        }
                     }
+                    return bigs.apply(l.bigValue(), r.bigValue());
                 }
-                case "mod" -> Optional.of(new IntLiteral(l.value() % r.value()));
-
-                case "eq"  -> Optional.of(new BoolLiteral(l.value() == r.value()));
-                case "lt"  -> Optional.of(new BoolLiteral(l.value() <  r.value()));
-                case "le"  -> Optional.of(new BoolLiteral(l.value() <= r.value()));
-                case "gt"  -> Optional.of(new BoolLiteral(l.value() >  r.value()));
-                case "ge"  -> Optional.of(new BoolLiteral(l.value() >= r.value()));
-                case "nq"  -> Optional.of(new BoolLiteral(l.value() != r.value()));
+                if (right instanceof FloatLiteral r) return floats.apply(l.doubleValue(), r.value());
+            } else if (left instanceof FloatLiteral l) {
+                if (right instanceof FloatLiteral r) return floats.apply(l.value(), r.value());
+                if (right instanceof IntLiteral r) return floats.apply(l.value(), r.doubleValue());
+            }
+            return null;
+        });
+    }
 
-                default    -> Optional.empty();
-            };
-        }
+    private static Expr divide(BigInteger a, BigInteger b) {
+        BigInteger[] quotient = a.divideAndRemainder(b);
+        if (quotient[1].signum() != 0) return new FloatLiteral(a.doubleValue() / b.doubleValue());
+        return IntLiteral.of(quotient[0]);
+    }
 
-        return Optional.empty();
+    //Strings are concatenated as ropes, other literals by their raw text
+    private static StringLiteral string(Literal literal) {
+        return literal instanceof StringLiteral s ? s : new StringLiteral(literal.asRawString());
     }
 
-    private static Expr stringToList(String str) {
-        Expr result = new Call(null, "Nil", List.of()); // Nil()
-        for (int i = str.length() - 1; i >= 0; i--) {
-            result = new Call(null, "Cons", List.of(
-                    new CharLiteral(str.charAt(i)),
-                    result
-            ));
+    /**
+     * String of a list of chars, null if the term is not one.
+     * A suffix that is still an exploded string is appended as a rope, so it is not copied char by char.
+     */
+    private static Expr implode(Expr list) {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            StringLiteral rest = PackedList.string(list);
+            if (rest != null) return sb.isEmpty() ? rest : StringLiteral.concat(new StringLiteral(sb.toString()), rest);
+            if (!(list instanceof Call call) || call.namespace() != null) return null;
+            if (call.function().equals("Nil") && call.arguments().isEmpty()) return new StringLiteral(sb.toString());
+            if (!call.function().equals("Cons") || call.arguments().size() != 2
+                    || !(call.arguments().get(0) instanceof CharLiteral c)) return null;
+            sb.append(c.value());
+            list = call.arguments().get(1);
         }
-        return result;
     }
 }
@@ -1,65 +1,157 @@
 package engine;
 
 import ast.*;
+import engine.NativeRuleRegistry.NativeOperation;
 import modules.Namespace;
+import modules.RuleKey;
 
 import java.util.*;
 
 public class RewriteEngine {
     private final Map<String, Namespace> namespaces;
-    private final PatternMatcher matcher = new PatternMatcher();
-    private final Substitutor substitutor = new Substitutor();
+    //Specialized decision trees per namespace, only present in specialized mode
+    private final Map<String, Map<RuleKey, DecisionTree>> specialized;
+    //Argument masks of all strict pragmas; an argument is non-strict if any namespace declares it non-strict
+    private final Map<RuleKey, boolean[]> strictness;
 
     public RewriteEngine(Map<String, Namespace> namespaces) {
+        this(namespaces, false);
+    }
+
+    //The specialized mode transforms the decision trees once at construction (see DecisionTree#specialize),
+    //it does not generate code and takes the same number of steps as the interpreted trees
+    public RewriteEngine(Map<String, Namespace> namespaces, boolean specialized) {
         this.namespaces = namespaces;
+        this.strictness = mergeStrictness(namespaces);
+        this.specialized = specialized ? specialize(namespaces, strictness) : null;
     }
 
     public Expr rewrite(Expr expr, String context) {
-        return rewriteWithRule(expr, context)
+        return rewrite(expr, context, Forcer.NONE);
+    }
+
+    //Arguments of the call may be delayed, the forcer evaluates them as far as matching needs it
+    public Expr rewrite(Expr expr, String context, Forcer forcer) {
+        return rewrite(expr, context, forcer, new int[1]);
+    }
+
+    /**
+     * Rewrites the call once. folded[0] is increased by the native calls the specialized trees answered while
+     * building the result; the other modes rewrite each of them in a step of its own, so the evaluator counts
+     * them as steps too.
+     */
+    public Expr rewrite(Expr expr, String context, Forcer forcer, int[] folded) {
+        return rewriteWithRule(expr, context, specialized != null, forcer, folded)
                 .map(RewriteResult::result)
                 .orElse(expr);
     }
 
+    //Always uses the interpreted trees, so the trace shows every native step
     public Optional<RewriteResult> rewriteWithRule(Expr expr, String context) {
+        return rewriteWithRule(expr, context, Forcer.NONE);
+    }
+
+    public Optional<RewriteResult> rewriteWithRule(Expr expr, String context, Forcer forcer) {
+        return rewriteWithRule(expr, context, false, forcer, new int[1]);
+    }
+
+    /**
+     * Argument mask of the strict pragma for the call, null if all arguments are strict.
+     * Only unqualified calls can have non-strict arguments: their replacement is evaluated in the
+     * same context as the unevaluated arguments.
+     */
+    public boolean[] strictness(Call call, String context) {
+        if (strictness.isEmpty() || call.namespace() != null) return null;
+        if (!strictness.containsKey(new RuleKey(call.function(), call.arguments().size()))) return null;
+        Namespace owner = owner(call, context);
+        return owner == null ? null : owner.strictness(call.function(), call.arguments().size());
+    }
+
+    //True if the call resolves to a constructor, such a call is already data and needs no rewrite
+    public boolean isConstructor(Call call, String context) {
+        Namespace owner = owner(call, context);
+        return owner != null && owner.lookup(call.function(), call.arguments().size()).isConstructor();
+    }
+
+    //True if the rules handling the call belong to a function declared with the memo pragma
+    public boolean isMemoized(Call call, String context, boolean all) {
+        Namespace owner = owner(call, context);
+        if (owner == null || owner.lookup(call.function(), call.arguments().size()).isConstructor()) return false;
+        return all || owner.memoized().contains(call.function());
+    }
+
+    /**
+     * False if a native function that is not pure can handle the call. Its result may differ between calls,
+     * so it is not forked and no result computed with it is memoized. Rules of the namespace are not looked at,
+     * as the native function is still used if none of them matches.
+     */
+    public boolean isPure(Call call, String context) {
+        if (!NativeRuleRegistry.hasImpureFunctions()) return true;
+        String namespace = call.namespace() == null ? context : call.namespace();
+        NativeFunction function = NativeRuleRegistry.lookup(namespace, call.function(), call.arguments().size());
+        return function == null || function.pure();
+    }
+
+    //Namespace whose rules are tried first for the call (same order as rewriting), null if only natives are left
+    private Namespace owner(Call call, String context) {
+        Namespace namespace = null;
+        if (call.namespace() == null) {
+            namespace = namespaces.get(context);
+        } else if (namespaces.get(context).imports().stream().anyMatch(i -> i.module().equals(call.namespace()))) {
+            namespace = namespaces.get(call.namespace());
+        }
+        if (namespace != null && namespace.lookup(call.function(), call.arguments().size()) != null) {
+            return namespace;
+        }
+        Namespace prelude = namespaces.get("Prelude");
+        return prelude.lookup(call.function(), call.arguments().size()) != null ? prelude : null;
+    }
+
+    //Intrinsic of the namespace whose rules handle the call, so a module that overrides the function keeps its rules
+    private NativeFunction intrinsic(Call call, String context) {
+        if (!NativeRuleRegistry.hasIntrinsic(call.function(), call.arguments().size())) return null;
+        Namespace owner = owner(call, context);
+        return owner == null ? null : NativeRuleRegistry.intrinsic(owner.name(), call.function(), call.arguments().size());
+    }
+
+    private Optional<RewriteResult> rewriteWithRule(Expr expr, String context, boolean useSpecialized, Forcer forcer,
+                                                    int[] folded) {
         if (expr instanceof Call call) {
-            // 1. Try module rules
+            // 0. Try intrinsics, they replace the rules of a module for the values they support
+            NativeFunction intrinsic = intrinsic(call, context);
+            if (intrinsic != null) {
+                Expr intrinsicResult = intrinsic.apply(forceHeads(call, context, forcer));
+                if (intrinsicResult != null) {
+                    return Optional.of(new RewriteResult(intrinsicResult, makeNativeRule(call, intrinsic, intrinsicResult)));
+                }
+            }
+
+            // 1. Try module rules (only the bucket with the same name and arity)
             //String namespace = call.namespace() == null ? context : call.namespace();
-            Optional<Map<String, Expr>> match;
+            Optional<RewriteResult> result = Optional.empty();
+            String nativeNamespace = null;
             if (call.namespace() == null) {
-                for (Rule rule : namespaces.get(context).rules()) {
-                    match = matcher.match(call, rule.pattern());
-                    if (match.isPresent()) {
-                        Expr result = substitutor.substitute(rule.replacement(), match.get());
-                        return Optional.of(new RewriteResult(result, rule));
-                    }
-                }
+                result = tryRules(call, namespaces.get(context), useSpecialized, forcer, folded);
+                nativeNamespace = context;
             } else {
                 List<String> imports = namespaces.get(context).imports().stream().map(Import::module).toList();
                 if (imports.contains(call.namespace())) {
-                    for (Rule rule : namespaces.get(call.namespace()).rules()) {
-                        match = matcher.match(call, rule.pattern());
-                        if (match.isPresent()) {
-                            Expr result = substitutor.substitute(rule.replacement(), match.get());
-                            return Optional.of(new RewriteResult(result, rule));
-                        }
-                    }
+                    result = tryRules(call, namespaces.get(call.namespace()), useSpecialized, forcer, folded);
+                    nativeNamespace = call.namespace();
                 }
             }
+            if (result.isPresent()) return result;
 
             //2. Try prelude rules
-            for (Rule rule : namespaces.get("Prelude").rules()) {
-                match = matcher.match(call, rule.pattern());
-                if (match.isPresent()) {
-                    Expr result = substitutor.substitute(rule.replacement(), match.get());
-                    return Optional.of(new RewriteResult(result, rule));
-                }
-            }
-
-            // 3. Try native function
-            Optional<Expr> nativeResult = NativeRuleRegistry.eval(call);
-            if (nativeResult.isPresent()) {
-                Rule nativeRule = makeNativeRule(call, nativeResult.get());
-                return Optional.of(new RewriteResult(nativeResult.get(), nativeRule));
+            result = tryRules(call, namespaces.get("Prelude"), useSpecialized, forcer, folded);
+            if (result.isPresent()) return result;
+
+            // 3. Try native function (plugin functions of the namespace, then built-in)
+            NativeFunction function = NativeRuleRegistry.lookup(nativeNamespace, call.function(), call.arguments().size());
+            Expr nativeResult = function == null ? null : function.apply(forceAll(call.arguments(), forcer));
+            if (nativeResult != null) {
+                Rule nativeRule = makeNativeRule(call, function, nativeResult);
+                return Optional.of(new RewriteResult(nativeResult, nativeRule));
             }
 
             throw new RuntimeException("No matching rule found for call: " + call);
@@ -73,9 +165,83 @@ public class RewriteEngine {
     }
 
 
+    //Intrinsics inspect the heads of the arguments that the call evaluates, like the rules they replace
+    private List<Expr> forceHeads(Call call, String context, Forcer forcer) {
+        if (forcer == Forcer.NONE) return call.arguments();
+        boolean[] strict = strictness(call, context);
+        List<Expr> forced = new ArrayList<>(call.arguments().size());
+        for (int i = 0; i < call.arguments().size(); i++) {
+            Expr arg = call.arguments().get(i);
+            forced.add(strict == null || strict[i] ? forcer.head(arg) : arg);
+        }
+        return forced;
+    }
+
+    //Native functions consume whole values
+    private static List<Expr> forceAll(List<Expr> arguments, Forcer forcer) {
+        if (forcer == Forcer.NONE) return arguments;
+        List<Expr> forced = new ArrayList<>(arguments.size());
+        for (Expr arg : arguments) {
+            forced.add(forcer.full(arg));
+        }
+        return forced;
+    }
+
+    private Optional<RewriteResult> tryRules(Call call, Namespace namespace, boolean useSpecialized, Forcer forcer,
+                                             int[] folded) {
+        DecisionTree tree = useSpecialized
+                ? specialized.get(namespace.name()).get(new RuleKey(call.function(), call.arguments().size()))
+                : namespace.lookup(call.function(), call.arguments().size());
+        if (tree == null) return Optional.empty();
+
+        return tree.match(call, forcer).map(match -> new RewriteResult(match.instantiate(folded), match.rule()));
+    }
+
+    //A call can be inlined as native call if no namespace defines a rule with the same name and arity
+    private static Map<String, Map<RuleKey, DecisionTree>> specialize(Map<String, Namespace> namespaces,
+                                                                      Map<RuleKey, boolean[]> strictness) {
+        Set<RuleKey> defined = new HashSet<>(NativeRuleRegistry.pluginKeys());
+        for (Namespace namespace : namespaces.values()) {
+            defined.addAll(namespace.dispatch().keySet());
+        }
+
+        Map<String, Map<RuleKey, DecisionTree>> specialized = new HashMap<>();
+        for (Namespace namespace : namespaces.values()) {
+            Map<RuleKey, DecisionTree> trees = new HashMap<>();
+            namespace.dispatch().forEach((key, tree) -> trees.put(key, tree.specialize(
+                    k -> defined.contains(k) ? null : nativeOperation(k), strictness::get)));
+            specialized.put(namespace.name(), trees);
+        }
+        return specialized;
+    }
+
+    private static Map<RuleKey, boolean[]> mergeStrictness(Map<String, Namespace> namespaces) {
+        Map<RuleKey, boolean[]> merged = new HashMap<>();
+        for (Namespace namespace : namespaces.values()) {
+            namespace.strictness().forEach((key, strict) -> {
+                boolean[] mask = merged.computeIfAbsent(key, k -> filled(k.arity()));
+                for (int i = 0; i < mask.length; i++) {
+                    mask[i] &= strict[i];
+                }
+            });
+        }
+        return merged;
+    }
+
+    private static boolean[] filled(int arity) {
+        boolean[] mask = new boolean[arity];
+        Arrays.fill(mask, true);
+        return mask;
+    }
+
+    private static NativeOperation nativeOperation(RuleKey key) {
+        NativeFunction function = NativeRuleRegistry.lookup(key.function(), key.arity());
+        return function == null ? null : function.operation();
+    }
+
     //Is needed for the Trace-Mode -> Native Rules arent "Rewriting-Rules" per definition
-    private Rule makeNativeRule(Call call, Expr result) {
-        String sb = call.function();
+    private Rule makeNativeRule(Call call, NativeFunction function, Expr result) {
+        String sb = function.qualifiedName();
 
         List<PatternArg> patternArgs= new ArrayList<>();
         for (int i = 0; i < call.arguments().size() ; i++) {
@@ -3,6 +3,8 @@ package engine;
 import ast.*;
 import modules.Namespace;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -65,25 +67,29 @@ public class RuleValidator {
         return false;
     }
 
+    //Iterative, patterns are compared node by node with a work list of pairs
     private static boolean callEquals(Expr e1, Expr e2) {
-        if (e1 instanceof Call c1 && e2 instanceof Call c2) {
-            if (!c1.function().equals(c2.function())) return false;
-            if (c1.arguments().size() != c2.arguments().size()) return false;
-
-            for (int i = 0; i < c1.arguments().size(); i++) {
-                if (!callEquals(c1.arguments().get(i), c2.arguments().get(i))) return false;
+        Deque<Expr> pending = new ArrayDeque<>();
+        pending.push(e2);
+        pending.push(e1);
+        while (!pending.isEmpty()) {
+            Expr left = pending.pop();
+            Expr right = pending.pop();
+
+            if (left instanceof Call c1 && right instanceof Call c2) {
+                if (!c1.function().equals(c2.function())) return false;
+                if (c1.arguments().size() != c2.arguments().size()) return false;
+
+                for (int i = c1.arguments().size() - 1; i >= 0; i--) {
+                    pending.push(c2.arguments().get(i));
+                    pending.push(c1.arguments().get(i));
+                }
+            } else if (left instanceof Literal l1 && right instanceof Literal l2) {
+                if (!l1.equals(l2)) return false;
+            } else if (!(left instanceof Var && right instanceof Var)) {
+                return false;
             }
-            return true;
         }
-
-        if (e1 instanceof Literal l1 && e2 instanceof Literal l2) {
-            return l1.equals(l2);
-        }
-
-        if (e1 instanceof Var && e2 instanceof Var) {
-            return true;
-        }
-
-        return false;
+        return true;
     }
 }
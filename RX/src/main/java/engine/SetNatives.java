@@ -0,0 +1,62 @@
+package engine;
+
+import ast.*;
+
+import java.util.List;
+
+/**
+ * Native functions of the Set module.
+ * They work on SetLiteral values and are only reached if no rule of the module matches, so the
+ * list rules keep working for sets written as lists. Bulk operations accept a list set as other operand.
+ */
+public class SetNatives implements NativeRuleProvider {
+    private static final String NAMESPACE = "Set";
+
+    @Override
+    public List<NativeFunction> functions() {
+        return List.of(
+                function("emptySet", 0, args -> SetLiteral.EMPTY),
+                function("singleton", 1, args -> SetLiteral.of(args.get(0))),
+                function("listToSet", 1, args -> listToSet(args.get(0))),
+                function("toList", 1, args -> args.get(0) instanceof SetLiteral set ? set.toList() : null),
+                function("insert", 2, args -> args.get(1) instanceof SetLiteral set ? set.insert(args.get(0)) : null),
+                function("member", 2, args -> args.get(1) instanceof SetLiteral set
+                        ? BoolLiteral.of(set.contains(args.get(0))) : null),
+                function("union", 2, args -> {
+                    SetLiteral a = set(args.get(0)), b = set(args.get(1));
+                    return a != null && b != null ? a.union(b) : null;
+                }),
+                function("intersect", 2, args -> {
+                    SetLiteral a = set(args.get(0)), b = set(args.get(1));
+                    return a != null && b != null ? a.intersect(b) : null;
+                }),
+                function("difference", 2, args -> {
+                    SetLiteral a = set(args.get(0)), b = set(args.get(1));
+                    return a != null && b != null ? a.difference(b) : null;
+                }),
+                function("isEmpty", 1, args -> args.get(0) instanceof SetLiteral set ? BoolLiteral.of(set.size() == 0) : null),
+                function("size", 1, args -> args.get(0) instanceof SetLiteral set ? IntLiteral.of(set.size()) : null)
+        );
+    }
+
+    //A list set keeps its order
+    private static SetLiteral set(Expr expr) {
+        return expr instanceof SetLiteral set ? set : SetLiteral.fromList(expr);
+    }
+
+    //Same order as inserting the elements from the last to the first, like the former list rules
+    private static Expr listToSet(Expr list) {
+        if (list instanceof SetLiteral set) return set;
+        List<Expr> elements = Lists.elements(list);
+        if (elements == null) return null;
+        SetLiteral set = SetLiteral.EMPTY;
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            set = set.insert(elements.get(i));
+        }
+        return set;
+    }
+
+    private static NativeFunction function(String name, int arity, NativeRuleRegistry.NativeOperation operation) {
+        return new NativeFunction(NAMESPACE, name, arity, true, operation);
+    }
+}
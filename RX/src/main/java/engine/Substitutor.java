@@ -16,7 +16,7 @@ public class Substitutor {
             List<Expr> newArgs = call.arguments().stream()
                     .map(arg -> substitute(arg, bindings))
                     .toList();
-            return new Call(call.namespace(), call.function(), newArgs);
+            return TermFactory.call(call.namespace(), call.function(), newArgs);
         }
 
         return expr;
@@ -0,0 +1,110 @@
+package engine;
+
+import ast.*;
+
+import engine.NativeRuleRegistry.NativeOperation;
+import modules.RuleKey;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Replacement of a rule, pre-compiled at load time.
+ * Pattern variables are replaced by slot indices, so instantiating the replacement
+ * only reads from the slot array filled by the {@link DecisionTree}.
+ * Native templates answer their call while the replacement is built, folded[0] counts these calls,
+ * as each of them is a step of its own when the call is rewritten by the evaluator.
+ */
+public sealed interface Template permits Template.Slot, Template.Constant, Template.Apply, Template.Native {
+
+    Expr instantiate(Expr[] slots, int[] folded);
+
+    //Replaces calls that can only be answered by a native function with Native templates
+    default Template specialize(Function<RuleKey, NativeOperation> natives, Function<RuleKey, boolean[]> strictness) {
+        return this;
+    }
+
+    record Slot(int index) implements Template {
+        @Override
+        public Expr instantiate(Expr[] slots, int[] folded) {
+            return slots[index];
+        }
+    }
+
+    //Literals, unbound variables and ground calls are shared instead of copied
+    record Constant(Expr expr) implements Template {
+        @Override
+        public Expr instantiate(Expr[] slots, int[] folded) {
+            return expr;
+        }
+    }
+
+    record Apply(String namespace, String function, Template[] arguments) implements Template {
+        @Override
+        public Expr instantiate(Expr[] slots, int[] folded) {
+            Expr[] args = new Expr[arguments.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = arguments[i].instantiate(slots, folded);
+            }
+            return TermFactory.call(namespace, function, List.of(args));
+        }
+
+        @Override
+        public Template specialize(Function<RuleKey, NativeOperation> natives, Function<RuleKey, boolean[]> strictness) {
+            //Non-strict arguments must stay unevaluated, so no native call is folded in there
+            boolean[] strict = namespace == null ? strictness.apply(new RuleKey(function, arguments.length)) : null;
+            Template[] specialized = new Template[arguments.length];
+            for (int i = 0; i < specialized.length; i++) {
+                specialized[i] = strict != null && !strict[i] ? arguments[i] : arguments[i].specialize(natives, strictness);
+            }
+            NativeOperation operation = namespace == null ? natives.apply(new RuleKey(function, arguments.length)) : null;
+            if (operation != null) {
+                return new Native(function, operation, specialized);
+            }
+            return new Apply(namespace, function, specialized);
+        }
+    }
+
+    //Calls the native operation resolved at load time, if it does not apply the call is built as usual
+    record Native(String function, NativeOperation operation, Template[] arguments) implements Template {
+        @Override
+        public Expr instantiate(Expr[] slots, int[] folded) {
+            Expr[] args = new Expr[arguments.length];
+            boolean literals = true;
+            for (int i = 0; i < args.length; i++) {
+                args[i] = arguments[i].instantiate(slots, folded);
+                literals &= args[i] instanceof Literal;
+            }
+            List<Expr> argList = List.of(args);
+            Expr result = literals ? operation.apply(argList) : null;
+            if (result == null) return TermFactory.call(null, function, argList);
+            folded[0]++;
+            return result;
+        }
+    }
+
+    static Template compile(Expr expr, Map<String, Integer> slots) {
+        switch (expr) {
+            case Var var -> {
+                Integer index = slots.get(var.name());
+                return index != null ? new Slot(index) : new Constant(var);
+            }
+            case Literal literal -> {
+                return new Constant(TermFactory.intern(literal));
+            }
+            case Thunk thunk -> {
+                return new Constant(thunk);
+            }
+            case Call call -> {
+                Template[] arguments = new Template[call.arguments().size()];
+                boolean ground = true;
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = compile(call.arguments().get(i), slots);
+                    ground &= arguments[i] instanceof Constant;
+                }
+                return ground ? new Constant(TermFactory.intern(call)) : new Apply(call.namespace(), call.function(), arguments);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package eval;
+
+import ast.Call;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Bounded table of the last redexes of one evaluation machine.
+ * Rewriting is deterministic, so a redex that comes up again in the same tail chain (the same position
+ * of the term, no value was returned in between) with the same context repeats forever. Entries are
+ * compared by their cached hash first, so a check is a scan over a few ints.
+ */
+final class CycleDetector {
+    //Power of two, cycles with more steps than entries are not detected
+    private static final int SIZE = 64;
+
+    record Redex(Call call, String context) {
+    }
+
+    private final int[] hashes = new int[SIZE];
+    private final int[] chains = new int[SIZE];
+    private final Call[] calls = new Call[SIZE];
+    private final String[] contexts = new String[SIZE];
+    //Number of visited redexes, the next slot is visited % SIZE
+    private long visited;
+    private int lastChain;
+
+    //Id for the frames of a new position, a rewritten frame keeps the id of the frame it replaces
+    int newChain() {
+        return ++lastChain;
+    }
+
+    //Returns the redexes from the earlier occurrence of the call up to now, null if the call is new in the chain
+    List<Redex> visit(Call call, String context, int chain) {
+        int hash = call.hashCode();
+        int entries = (int) Math.min(visited, SIZE);
+        for (int i = 1; i <= entries; i++) {
+            int slot = (int) ((visited - i) & (SIZE - 1));
+            if (hashes[slot] == hash && chains[slot] == chain
+                    && Objects.equals(contexts[slot], context) && calls[slot].equals(call)) {
+                return cycle(i, chain);
+            }
+        }
+        int slot = (int) (visited++ & (SIZE - 1));
+        hashes[slot] = hash;
+        chains[slot] = chain;
+        calls[slot] = call;
+        contexts[slot] = context;
+        return null;
+    }
+
+    //Redexes of the chain from the one age entries back to the newest
+    private List<Redex> cycle(int age, int chain) {
+        List<Redex> cycle = new ArrayList<>();
+        for (int i = age; i >= 1; i--) {
+            int slot = (int) ((visited - i) & (SIZE - 1));
+            if (chains[slot] == chain) cycle.add(new Redex(calls[slot], contexts[slot]));
+        }
+        return cycle;
+    }
+}
@@ -0,0 +1,104 @@
+package eval;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits of one evaluation: a budget of rewrite steps, an optional deadline and a cancellation flag.
+ * Machines charge their steps in batches, so the limits are only checked every few steps. A single
+ * machine stops right after the last step of the budget, forked tasks can overrun it by less than a batch.
+ */
+public final class EvalContext {
+    private static final int CHECK_INTERVAL = 256;
+
+    public enum Limit {
+        STEPS, DEADLINE, CANCELLED
+    }
+
+    private final long maxSteps;
+    //System.nanoTime() of the deadline, only valid if there is a timeout
+    private final long deadline;
+    private final boolean timed;
+    private final boolean detectCycles;
+    private final AtomicLong steps;
+    //Context the work was forked or started from, cancelling it cancels this one too
+    private final EvalContext parent;
+    private volatile boolean cancelled;
+
+    //A null timeout means no deadline
+    public EvalContext(long maxSteps, Duration timeout) {
+        this(maxSteps, timeout, false);
+    }
+
+    //Cycle detection aborts an eager evaluation as soon as a redex repeats in the same position
+    public EvalContext(long maxSteps, Duration timeout, boolean detectCycles) {
+        this(null, maxSteps, timeout, detectCycles);
+    }
+
+    private EvalContext(EvalContext parent, long maxSteps, Duration timeout, boolean detectCycles) {
+        if (maxSteps <= 0) {
+            throw new IllegalArgumentException("Step budget must be positive: " + maxSteps);
+        }
+        this.maxSteps = maxSteps;
+        this.timed = timeout != null;
+        this.deadline = timed ? System.nanoTime() + timeout.toNanos() : 0;
+        this.detectCycles = detectCycles;
+        this.steps = new AtomicLong();
+        this.parent = parent;
+    }
+
+    private EvalContext(EvalContext parent) {
+        this.maxSteps = parent.maxSteps;
+        this.timed = parent.timed;
+        this.deadline = parent.deadline;
+        this.detectCycles = parent.detectCycles;
+        this.steps = parent.steps;
+        this.parent = parent;
+    }
+
+    public static EvalContext unlimited() {
+        return new EvalContext(Long.MAX_VALUE, null);
+    }
+
+    public boolean detectsCycles() {
+        return detectCycles;
+    }
+
+    //Can be called from any thread, the evaluation stops at its next check
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || parent != null && parent.isCancelled();
+    }
+
+    //Context with its own limits that is cancelled with this one, e.g. for one of several evaluations stopped together
+    public EvalContext limited(long maxSteps, Duration timeout, boolean detectCycles) {
+        return new EvalContext(this, maxSteps, timeout, detectCycles);
+    }
+
+    //Context of forked work with the same budget and deadline, it can be cancelled without cancelling this one
+    EvalContext child() {
+        return new EvalContext(this);
+    }
+
+    public long steps() {
+        return steps.get();
+    }
+
+    //Number of steps a machine does before it charges them, the end of the budget is checked exactly
+    int interval() {
+        long remaining = maxSteps - steps.get();
+        return remaining >= CHECK_INTERVAL ? CHECK_INTERVAL : (int) Math.max(1, remaining + 1);
+    }
+
+    //Adds the steps of a machine, returns the exceeded limit or null
+    Limit charge(long count) {
+        long total = steps.addAndGet(count);
+        if (isCancelled()) return Limit.CANCELLED;
+        if (total > maxSteps) return Limit.STEPS;
+        if (timed && System.nanoTime() - deadline > 0) return Limit.DEADLINE;
+        return null;
+    }
+}
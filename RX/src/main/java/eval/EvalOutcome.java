@@ -0,0 +1,19 @@
+package eval;
+
+import ast.Expr;
+
+//Result of an evaluation with limits
+public sealed interface EvalOutcome {
+    long steps();
+
+    record Value(Expr value, long steps) implements EvalOutcome {
+    }
+
+    //The partial term is the state of the evaluation when the limit was noticed
+    record Exceeded(EvalContext.Limit limit, Expr partial, long steps) implements EvalOutcome {
+        @Override
+        public String toString() {
+            return "budget exceeded (" + limit + ") after " + steps + " steps: " + partial;
+        }
+    }
+}
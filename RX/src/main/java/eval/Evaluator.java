@@ -1,50 +1,450 @@
 package eval;
 
 import ast.*;
+import engine.Forcer;
 import engine.RewriteEngine;
 import engine.RewriteResult;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Innermost evaluation as a machine with an explicit stack.
+ * The continuation is kept in heap-allocated frames instead of Java stack frames,
+ * so the evaluation depth is only limited by the heap.
+ * The replacement of a rule is always in tail position: its frame replaces the frame of the rewritten call,
+ * so iterative rules like rev(Cons(h, t), acc) = rev(t, Cons(h, acc)) run with a constant stack.
+ * The parallel strategy forks expensive arguments of a call, every forked task runs its own machine.
+ */
 public class Evaluator {
     private final RewriteEngine engine;
+    //Results of memoized functions, null if memoization is disabled
+    private final MemoTable memo;
+    //Only set for the lazy strategy
+    private final LazyEvaluation lazy;
+    //Only set for the parallel strategy
+    private final ParallelReduction parallel;
+    //Deepest machine stack of the last evaluation, the deepest stack of any task with the parallel strategy.
+    //Every machine tracks its own depth and merges it when it stops
+    private final AtomicInteger peakDepth = new AtomicInteger();
+    //Steps done by impure native functions, a result is only memoized if none happened while it was computed
+    private final AtomicLong impureSteps = new AtomicLong();
 
     public Evaluator(RewriteEngine engine) {
+        this(engine, null);
+    }
+
+    public Evaluator(RewriteEngine engine, MemoTable memo) {
+        this(engine, memo, Strategy.EAGER);
+    }
+
+    //Memoization needs evaluated arguments, so it is only used by the eager strategy
+    public Evaluator(RewriteEngine engine, MemoTable memo, Strategy strategy) {
         this.engine = engine;
+        this.memo = memo;
+        this.lazy = strategy == Strategy.LAZY ? new LazyEvaluation(engine) : null;
+        this.parallel = strategy == Strategy.PARALLEL ? new ParallelReduction() : null;
     }
 
-    public Expr evaluate(Expr expr, String context) {
-        if (expr instanceof Call call) {
-            List<Expr> reducedArgs = call.arguments().stream()
-                    .map(arg -> evaluate(arg, context))
-                    .toList();
-            Call reducedCall = new Call(call.namespace(),call.function(), reducedArgs);
-            String namespace = call.namespace() == null ? context : call.namespace();
-            Expr rewritten = engine.rewrite(reducedCall, context);
-            if (!rewritten.equals(expr)) {
-                return evaluate(rewritten, namespace);
+    /**
+     * One entry of the machine stack.
+     * An argument frame evaluates the arguments of its call from left to right, a memo frame
+     * stores the result of a rewrite for all memoized calls of a tail call chain.
+     */
+    private static final class Frame {
+        final Call call;
+        final String context;
+        final List<MemoTable.Key> keys;
+        //Impure steps before the first call of a memo frame was rewritten
+        long impure;
+        //Argument mask of the strict pragma, null if all arguments are strict
+        final boolean[] strict;
+        //Position in the term for the cycle detection, 0 if it is disabled
+        final int chain;
+        //Reduced arguments, only copied once an argument actually changes
+        Expr[] reduced;
+        int next;
+        //Parallel strategy: arguments were checked for forking, several of them need evaluation,
+        //tasks of the forked arguments and the context they run in, it is cancelled if they are not joined
+        boolean split;
+        boolean measured;
+        ForkJoinTask<Expr>[] forked;
+        EvalContext forkedContext;
+        //Step count when the evaluation of the next argument started, -1 if it is not measured
+        long mark = -1;
+
+        private Frame(Call call, String context, List<MemoTable.Key> keys, boolean[] strict, int chain) {
+            this.call = call;
+            this.context = context;
+            this.keys = keys;
+            this.strict = strict;
+            this.chain = chain;
+        }
+
+        static Frame arguments(Call call, String context, boolean[] strict, int chain) {
+            return new Frame(call, context, null, strict, chain);
+        }
+
+        static Frame memo(MemoTable.Key key, long impure) {
+            List<MemoTable.Key> keys = new ArrayList<>();
+            keys.add(key);
+            Frame frame = new Frame(null, null, keys, null, 0);
+            frame.impure = impure;
+            return frame;
+        }
+
+        boolean hasNext() {
+            return next < call.arguments().size();
+        }
+
+        boolean isNextStrict() {
+            return strict == null || strict[next];
+        }
+
+        boolean isStrict(int index) {
+            return strict == null || strict[index];
+        }
+
+        ForkJoinTask<Expr> nextTask() {
+            return forked == null ? null : forked[next];
+        }
+
+        Expr nextArgument() {
+            return call.arguments().get(next);
+        }
+
+        void accept(Expr value) {
+            if (reduced == null && value != call.arguments().get(next)) {
+                reduced = call.arguments().toArray(Expr[]::new);
             }
-            return rewritten;
+            if (reduced != null) reduced[next] = value;
+            next++;
+        }
+
+        //The call itself is reused if all arguments already were in normal form
+        Call reducedCall() {
+            if (reduced == null) return call;
+            return TermFactory.call(call.namespace(), call.function(), List.of(reduced));
         }
-        return expr;
     }
 
+    //Terms marked as normal are returned as is, so only the fresh parts of a replacement are evaluated again
+    public Expr evaluate(Expr expr, String context) {
+        return start(expr, context, null, EvalContext.unlimited());
+    }
+
+    //Stops with the partial term once a limit of the evaluation context is exceeded
+    public EvalOutcome evaluate(Expr expr, String context, EvalContext evalContext) {
+        return outcome(() -> start(expr, context, null, evalContext), evalContext);
+    }
+
+    //The trace always shows the sequential eager reduction order
     public Expr evaluateWithTrace(Expr expr, List<TraceEntry> trace, String context) {
-        if (expr instanceof Call call) {
-            List<Expr> reducedArgs = call.arguments().stream()
-                    .map(arg -> evaluateWithTrace(arg, trace,  context))
-                    .toList();
-            Call reducedCall = new Call(call.namespace(),call.function(), reducedArgs);
-            String namespace = call.namespace() == null ? context : call.namespace();
-            Optional<RewriteResult> rewritten = engine.rewriteWithRule(reducedCall, context);
-            if (rewritten.isPresent() && !rewritten.get().result().equals(expr)) {
-                RewriteResult rr = rewritten.get();
-                trace.add(new TraceEntry(trace.size()+1, reducedCall.toString(), context, rr.rule().toString(), rr.result().toString()));
-                return evaluateWithTrace(rewritten.get().result(), trace, namespace);
+        peakDepth.set(0);
+        return run(expr, context, trace, EvalContext.unlimited());
+    }
+
+    public EvalOutcome evaluateWithTrace(Expr expr, List<TraceEntry> trace, String context, EvalContext evalContext) {
+        return outcome(() -> {
+            peakDepth.set(0);
+            return run(expr, context, trace, evalContext);
+        }, evalContext);
+    }
+
+    private Expr start(Expr expr, String context, List<TraceEntry> trace, EvalContext evalContext) {
+        if (lazy != null) return lazy.normalForm(expr, context, evalContext);
+        peakDepth.set(0);
+        if (parallel != null) return parallel.invoke(() -> run(expr, context, trace, evalContext));
+        return run(expr, context, trace, evalContext);
+    }
+
+    private static EvalOutcome outcome(Supplier<Expr> evaluation, EvalContext evalContext) {
+        try {
+            Expr value = evaluation.get();
+            return new EvalOutcome.Value(value, evalContext.steps());
+        } catch (LimitExceededException e) {
+            //Forked tasks stop at their next check
+            evalContext.cancel();
+            return new EvalOutcome.Exceeded(e.limit(), e.partial(), evalContext.steps());
+        }
+    }
+
+    public int peakDepth() {
+        return peakDepth.get();
+    }
+
+    private Expr run(Expr expr, String context, List<TraceEntry> trace, EvalContext evalContext) {
+        if (!needsEvaluation(expr)) return expr;
+
+        CycleDetector cycles = evalContext.detectsCycles() ? new CycleDetector() : null;
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(arguments((Call) expr, context, cycles));
+        //Result of the frame popped last, handed to the frame below
+        Expr returned = null;
+        //Rewrites done by this machine, the parallel strategy learns the cost of arguments from it
+        long steps = 0;
+        //Steps not charged to the evaluation context yet
+        int unchecked = 0;
+        int interval = evalContext.interval();
+        //Native calls the specialized trees answered during the last rewrite, each of them is a step
+        int[] folded = new int[1];
+        int depth = 0;
+        try {
+            while (true) {
+                depth = Math.max(depth, stack.size());
+                Frame frame = stack.peek();
+                if (frame.call == null) {
+                    if (frame.impure == impureSteps.get()) {
+                        for (MemoTable.Key key : frame.keys) {
+                            memo.put(key, returned);
+                        }
+                    }
+                    stack.pop();
+                } else {
+                    if (returned != null) {
+                        if (frame.mark >= 0) {
+                            parallel.record((Call) frame.nextArgument(), steps - frame.mark);
+                            frame.mark = -1;
+                        }
+                        frame.accept(returned);
+                        returned = null;
+                    }
+                    if (frame.hasNext()) {
+                        if (parallel != null && trace == null && !frame.split) split(frame, evalContext);
+                        ForkJoinTask<Expr> task = frame.nextTask();
+                        Expr arg = frame.nextArgument();
+                        if (task != null) {
+                            frame.accept(join(task, stack));
+                        } else if (needsEvaluation(arg) && frame.isNextStrict()) {
+                            if (frame.measured) frame.mark = steps;
+                            stack.push(arguments((Call) arg, frame.context, cycles));
+                        } else {
+                            frame.accept(arg);
+                        }
+                        continue;
+                    }
+                    if (++unchecked == interval) {
+                        EvalContext.Limit limit = evalContext.charge(unchecked);
+                        if (limit != null) throw new LimitExceededException(limit, partial(stack, null));
+                        unchecked = 0;
+                        interval = evalContext.interval();
+                    }
+                    stack.pop();
+                    steps++;
+                    try {
+                        returned = reduce(frame, stack, trace, evalContext, cycles, folded);
+                    } catch (LimitExceededException e) {
+                        //A forced argument was stopped, the partial term of the forcer is the rewritten call
+                        throw new LimitExceededException(e.limit(), partial(stack, e.partial()));
+                    }
+                    if (folded[0] > 0) {
+                        steps += folded[0];
+                        unchecked += folded[0];
+                        folded[0] = 0;
+                        if (unchecked >= interval) {
+                            EvalContext.Limit limit = evalContext.charge(unchecked);
+                            if (limit != null) throw new LimitExceededException(limit, partial(stack, returned));
+                            unchecked = 0;
+                            interval = evalContext.interval();
+                        }
+                    }
+                }
+                if (returned != null && stack.isEmpty()) {
+                    evalContext.charge(unchecked);
+                    if (parallel != null) parallel.record((Call) expr, steps);
+                    return returned;
+                }
             }
+        } catch (RuntimeException | Error e) {
+            abandon(stack);
+            throw e;
+        } finally {
+            peakDepth.accumulateAndGet(depth, Math::max);
         }
-        return expr;
     }
 
+    //Forked arguments that will not be joined stop at their next check instead of running to the end
+    private static void abandon(Deque<Frame> stack) {
+        for (Frame frame : stack) {
+            if (frame.forkedContext != null) frame.forkedContext.cancel();
+        }
+    }
+
+    /**
+     * Forks the expensive arguments of a frame with several arguments to evaluate. The first of them is
+     * always evaluated by this machine, and the tasks are joined from left to right, so a failing argument
+     * raises the same error as in sequential evaluation. The tasks after it are cancelled through their context.
+     */
+    @SuppressWarnings("unchecked")
+    private void split(Frame frame, EvalContext evalContext) {
+        frame.split = true;
+        List<Expr> args = frame.call.arguments();
+        int candidates = 0;
+        for (int i = frame.next; i < args.size(); i++) {
+            if (!(args.get(i) instanceof Call arg) || arg.isNormal() || !frame.isStrict(i)) continue;
+            if (candidates++ > 0 && parallel.shouldFork(arg) && engine.isPure(arg, frame.context)) {
+                if (frame.forked == null) {
+                    frame.forked = (ForkJoinTask<Expr>[]) new ForkJoinTask<?>[args.size()];
+                    frame.forkedContext = evalContext.child();
+                }
+                EvalContext forkedContext = frame.forkedContext;
+                frame.forked[i] = parallel.fork(() -> run(arg, frame.context, null, forkedContext));
+            }
+        }
+        //The arguments evaluated by this machine are measured, so their functions can be forked later
+        frame.measured = candidates > 1;
+    }
+
+    //A forked argument that was stopped becomes part of the partial term of this machine
+    private static Expr join(ForkJoinTask<Expr> task, Deque<Frame> stack) {
+        try {
+            return task.join();
+        } catch (LimitExceededException e) {
+            throw new LimitExceededException(e.limit(), partial(stack, e.partial()));
+        }
+    }
+
+    private Frame arguments(Call call, String context, CycleDetector cycles) {
+        return arguments(call, context, cycles == null ? 0 : cycles.newChain());
+    }
+
+    private Frame arguments(Call call, String context, int chain) {
+        return Frame.arguments(call, context, engine.strictness(call, context), chain);
+    }
+
+    /**
+     * Rewrites a call with evaluated strict arguments; returns its value or null if frames to evaluate the result
+     * were pushed. Non-strict arguments are only evaluated if a pattern inspects them.
+     */
+    private Expr reduce(Frame frame, Deque<Frame> stack, List<TraceEntry> trace, EvalContext evalContext,
+                        CycleDetector cycles, int[] folded) {
+        Call reducedCall = frame.reducedCall();
+        String context = frame.context;
+        boolean nonStrict = frame.strict != null;
+        if (!nonStrict && engine.isConstructor(reducedCall, context)) return reducedCall.markNormal();
+
+        MemoTable.Key key = null;
+        long impure = 0;
+        if (memo != null && trace == null && !nonStrict && engine.isMemoized(reducedCall, context, memo.all())) {
+            key = new MemoTable.Key(context, reducedCall);
+            Expr cached = memo.get(key);
+            if (cached != null) return cached;
+            impure = impureSteps.get();
+        }
+        if (memo != null && !engine.isPure(reducedCall, context)) impureSteps.incrementAndGet();
+
+        String namespace = reducedCall.namespace() == null ? context : reducedCall.namespace();
+        Forcer forcer = nonStrict ? forcer(reducedCall, context, trace, evalContext) : Forcer.NONE;
+        Expr rewritten = rewrite(reducedCall, context, forcer, trace, folded);
+        boolean progress = !rewritten.equals(reducedCall);
+        if (key != null) {
+            //A memoized call in tail position of another one has the same value, so one frame stores both
+            Frame below = stack.peek();
+            if (below != null && below.call == null) below.keys.add(key);
+            else stack.push(Frame.memo(key, impure));
+        }
+        if (!progress) {
+            return rewritten instanceof Call result ? result.markNormal() : rewritten;
+        }
+        if (cycles != null) {
+            List<CycleDetector.Redex> cycle = cycles.visit(reducedCall, context, frame.chain);
+            if (cycle != null) throw cycle(cycle, trace, evalContext);
+        }
+        if (needsEvaluation(rewritten)) {
+            //The replacement takes the position of the rewritten call
+            stack.push(arguments((Call) rewritten, namespace, frame.chain));
+            return null;
+        }
+        return rewritten;
+    }
+
+    //The trace uses the interpreted trees, so nothing is folded there
+    private Expr rewrite(Call reducedCall, String context, Forcer forcer, List<TraceEntry> trace, int[] folded) {
+        if (trace == null) return engine.rewrite(reducedCall, context, forcer, folded);
+
+        Optional<RewriteResult> rewritten = engine.rewriteWithRule(reducedCall, context, forcer);
+        if (rewritten.isEmpty()) return reducedCall;
+        RewriteResult rr = rewritten.get();
+        if (!rr.result().equals(reducedCall)) {
+            trace.add(new TraceEntry(trace.size()+1, reducedCall.toString(), context, rr.rule().toString(), rr.result().toString()));
+        }
+        return rr.result();
+    }
+
+    //Looks up the rule of every step of the cycle again, this is only done once the evaluation is aborted
+    private RewriteCycleException cycle(List<CycleDetector.Redex> cycle, List<TraceEntry> trace, EvalContext evalContext) {
+        List<Call> redexes = new ArrayList<>();
+        List<Rule> rules = new ArrayList<>();
+        for (CycleDetector.Redex redex : cycle) {
+            Forcer forcer = engine.strictness(redex.call(), redex.context()) == null
+                    ? Forcer.NONE : forcer(redex.call(), redex.context(), trace, evalContext);
+            redexes.add(redex.call());
+            engine.rewriteWithRule(redex.call(), redex.context(), forcer).ifPresent(result -> rules.add(result.rule()));
+        }
+        return new RewriteCycleException(redexes, rules);
+    }
+
+    //Evaluates a non-strict argument of the call that a pattern inspects, the evaluation nests on the Java stack
+    private Forcer forcer(Call call, String context, List<TraceEntry> trace, EvalContext evalContext) {
+        //The same argument can be inspected by several nodes of the decision tree
+        Map<Expr, Expr> forced = new IdentityHashMap<>();
+        return new Forcer() {
+            @Override
+            public Expr head(Expr expr) {
+                return full(expr);
+            }
+
+            @Override
+            public Expr full(Expr expr) {
+                if (!needsEvaluation(expr)) return expr;
+                try {
+                    return forced.computeIfAbsent(expr, e -> run(e, context, trace, evalContext));
+                } catch (LimitExceededException e) {
+                    throw new LimitExceededException(e.limit(), replace(call, expr, e.partial()));
+                }
+            }
+        };
+    }
+
+    //Term with the delayed subterm replaced, only terms that still need evaluation can contain it
+    private static Expr replace(Expr term, Expr delayed, Expr replacement) {
+        if (term == delayed) return replacement;
+        if (!needsEvaluation(term)) return term;
+        Call call = (Call) term;
+        Expr[] args = call.arguments().toArray(Expr[]::new);
+        boolean changed = false;
+        for (int i = 0; i < args.length; i++) {
+            Expr arg = replace(args[i], delayed, replacement);
+            changed |= arg != args[i];
+            args[i] = arg;
+        }
+        return changed ? new Call(call.namespace(), call.function(), List.of(args)) : call;
+    }
+
+    //Current term of the machine: every frame is the argument its caller is evaluating,
+    //the hole is the partial term of the argument the top frame is waiting for
+    private static Expr partial(Deque<Frame> stack, Expr hole) {
+        Expr term = hole;
+        for (Frame frame : stack) {
+            if (frame.call == null) continue;
+            Expr[] args = frame.call.arguments().toArray(Expr[]::new);
+            if (frame.reduced != null) System.arraycopy(frame.reduced, 0, args, 0, frame.next);
+            if (term != null) args[frame.next] = term;
+            term = new Call(frame.call.namespace(), frame.call.function(), List.of(args));
+        }
+        return term;
+    }
+
+    private static boolean needsEvaluation(Expr expr) {
+        return expr instanceof Call call && !call.isNormal();
+    }
 }
@@ -0,0 +1,245 @@
+package eval;
+
+import ast.*;
+import engine.Forcer;
+import engine.RewriteEngine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Call-by-need evaluation.
+ * Arguments are wrapped in shared thunks instead of being reduced first. A thunk is forced when the
+ * decision tree inspects its position or a native function consumes it, so unused arguments (like the
+ * branch of an if that is not taken) are never evaluated.
+ * Forcing does not nest on the Java stack: if a rewrite needs a thunk that is not evaluated far enough,
+ * the forcer raises a demand, the machine evaluates the thunk on its own stack and then retries the rewrite.
+ * Rewrites have no side effects and forced thunks keep their values, so the retry continues where it stopped.
+ */
+class LazyEvaluation implements Forcer {
+    private final RewriteEngine engine;
+    //Limits of the running evaluation and the steps not charged to them yet
+    private EvalContext evalContext = EvalContext.unlimited();
+    private int unchecked;
+
+    LazyEvaluation(RewriteEngine engine) {
+        this.engine = engine;
+    }
+
+    //Raised by the forcer for a thunk the rewrite needs, to its head or completely
+    private static final class Demand extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Thunk thunk;
+        private final boolean full;
+
+        private Demand(Thunk thunk, boolean full) {
+            super(null, null, false, false);
+            this.thunk = thunk;
+            this.full = full;
+        }
+    }
+
+    /**
+     * Frames of the machine stack. A frame returns its value to the frame below it: a force frame returns
+     * the value of its thunk, a head frame the head normal form of its expression and a normalize frame the
+     * normal form of its call. Force and head frames look at their thunk again instead of using the value.
+     */
+    private sealed interface Frame permits Force, Head, Normalize {
+    }
+
+    //Evaluates the thunk until its head is known, or completely
+    private record Force(Thunk thunk, boolean full) implements Frame {
+    }
+
+    //Rewrites the expression until its head is a literal or a constructor, the result is stored in the target
+    private static final class Head implements Frame {
+        Expr expr;
+        String context;
+        //The expression is a call whose arguments are delayed already
+        boolean delayed;
+        final Thunk target;
+
+        Head(Expr expr, String context, Thunk target) {
+            this.expr = expr;
+            this.context = context;
+            this.target = target;
+        }
+    }
+
+    //Rebuilds the call with the normal forms of its arguments, the result is stored in the target
+    private static final class Normalize implements Frame {
+        final Call call;
+        final String context;
+        final Expr[] arguments;
+        int next;
+        final Thunk target;
+
+        Normalize(Call call, String context, Thunk target) {
+            this.call = call;
+            this.context = context;
+            this.arguments = new Expr[call.arguments().size()];
+            this.target = target;
+        }
+    }
+
+    Expr normalForm(Expr expr, String context, EvalContext evalContext) {
+        this.evalContext = evalContext;
+        unchecked = 0;
+        try {
+            Expr result = run(new Thunk(expr, context));
+            evalContext.charge(unchecked);
+            return result;
+        } finally {
+            this.evalContext = EvalContext.unlimited();
+        }
+    }
+
+    //Forces the root thunk completely
+    private Expr run(Thunk root) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Force(root, true));
+        Expr returned = null;
+        while (true) {
+            Expr value = switch (stack.peek()) {
+                case Force force -> force(force, stack);
+                case Head head -> head(head, stack);
+                case Normalize normalize -> normalize(normalize, returned, stack);
+            };
+            returned = null;
+            if (value == null) continue;
+            stack.pop();
+            if (stack.isEmpty()) return value;
+            returned = value;
+        }
+    }
+
+    //Each step returns the value of the frame or null if it pushed another frame first
+
+    private static Expr force(Force force, Deque<Frame> stack) {
+        Thunk thunk = force.thunk();
+        Expr value = thunk.value();
+        if (value == null) {
+            stack.push(new Head(thunk.expr(), thunk.context(), thunk));
+            return null;
+        }
+        if (force.full() && value instanceof Call call && !call.isNormal()) {
+            stack.push(new Normalize(call, thunk.context(), thunk));
+            return null;
+        }
+        return value;
+    }
+
+    private Expr head(Head head, Deque<Frame> stack) {
+        switch (head.expr) {
+            case Thunk thunk -> {
+                if (thunk.isForced()) return done(head, thunk.value());
+                stack.push(new Force(thunk, false));
+                return null;
+            }
+            case Call call when !call.isNormal() -> {
+                if (!head.delayed) {
+                    head.expr = delay(call, head.context);
+                    head.delayed = true;
+                }
+                Call delayed = (Call) head.expr;
+                if (engine.isConstructor(delayed, head.context)) return done(head, delayed);
+
+                if (++unchecked >= evalContext.interval()) {
+                    EvalContext.Limit limit = evalContext.charge(unchecked);
+                    if (limit != null) throw new LimitExceededException(limit, delayed);
+                    unchecked = 0;
+                }
+                Expr rewritten;
+                int[] folded = new int[1];
+                try {
+                    rewritten = engine.rewrite(delayed, head.context, this, folded);
+                } catch (Demand demand) {
+                    //Not a step yet, the rewrite is tried again once the thunk is evaluated
+                    unchecked--;
+                    stack.push(new Force(demand.thunk, demand.full));
+                    return null;
+                }
+                //Native calls the specialized trees answered while building the result are steps of their own
+                if (folded[0] > 0) {
+                    unchecked += folded[0];
+                    if (unchecked >= evalContext.interval()) {
+                        EvalContext.Limit limit = evalContext.charge(unchecked);
+                        if (limit != null) throw new LimitExceededException(limit, rewritten);
+                        unchecked = 0;
+                    }
+                }
+                if (rewritten.equals(delayed)) return done(head, rewritten);
+                head.context = delayed.namespace() == null ? head.context : delayed.namespace();
+                head.expr = rewritten;
+                head.delayed = false;
+                return null;
+            }
+            default -> {
+                return done(head, head.expr);
+            }
+        }
+    }
+
+    private static Expr normalize(Normalize normalize, Expr returned, Deque<Frame> stack) {
+        if (returned != null) normalize.arguments[normalize.next++] = returned;
+        while (normalize.next < normalize.arguments.length) {
+            Expr arg = normalize.call.arguments().get(normalize.next);
+            if (arg instanceof Thunk thunk) {
+                stack.push(new Force(thunk, true));
+                return null;
+            }
+            if (arg instanceof Call call && !call.isNormal()) {
+                stack.push(new Force(new Thunk(call, normalize.context), true));
+                return null;
+            }
+            normalize.arguments[normalize.next++] = arg;
+        }
+        Call call = normalize.call;
+        Expr result = TermFactory.call(call.namespace(), call.function(), List.of(normalize.arguments)).markNormal();
+        if (normalize.target != null) normalize.target.set(result);
+        return result;
+    }
+
+    private static Expr done(Head head, Expr value) {
+        if (head.target != null) head.target.set(value);
+        return value;
+    }
+
+    @Override
+    public Expr head(Expr expr) {
+        if (!(expr instanceof Thunk thunk)) return expr;
+        if (!thunk.isForced()) throw new Demand(thunk, false);
+        return thunk.value();
+    }
+
+    //Values outside of thunks are constructor calls whose arguments are thunks or values
+    @Override
+    public Expr full(Expr expr) {
+        if (expr instanceof Thunk thunk) {
+            Expr value = thunk.value();
+            if (value == null || value instanceof Call call && !call.isNormal()) throw new Demand(thunk, true);
+            return value;
+        }
+        if (!(expr instanceof Call call) || call.isNormal()) return expr;
+        Expr[] arguments = new Expr[call.arguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = full(call.arguments().get(i));
+        }
+        return TermFactory.call(call.namespace(), call.function(), List.of(arguments)).markNormal();
+    }
+
+    //Arguments that still need evaluation are delayed, values are passed as they are
+    private static Call delay(Call call, String context) {
+        Expr[] arguments = null;
+        for (int i = 0; i < call.arguments().size(); i++) {
+            Expr arg = call.arguments().get(i);
+            if (arg instanceof Call c && !c.isNormal()) {
+                if (arguments == null) arguments = call.arguments().toArray(Expr[]::new);
+                arguments[i] = new Thunk(c, context);
+            }
+        }
+        return arguments == null ? call : new Call(call.namespace(), call.function(), List.of(arguments));
+    }
+}
@@ -0,0 +1,26 @@
+package eval;
+
+import ast.Expr;
+
+//Unwinds an evaluation whose limit was exceeded, the evaluator turns it into an EvalOutcome.Exceeded
+class LimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final EvalContext.Limit limit;
+    //Terms are not serializable
+    private final transient Expr partial;
+
+    LimitExceededException(EvalContext.Limit limit, Expr partial) {
+        super("Evaluation limit exceeded: " + limit, null, false, false);
+        this.limit = limit;
+        this.partial = partial;
+    }
+
+    EvalContext.Limit limit() {
+        return limit;
+    }
+
+    Expr partial() {
+        return partial;
+    }
+}
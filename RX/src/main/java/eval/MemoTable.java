@@ -0,0 +1,86 @@
+package eval;
+
+import ast.Call;
+import ast.Expr;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of evaluation results (tabling).
+ * Keys are calls with fully evaluated arguments together with the context they were evaluated in,
+ * so a hit yields exactly the normal form the evaluation would produce. The least recently used
+ * entry is evicted once the capacity is reached.
+ */
+public class MemoTable {
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    public record Key(String context, Call call) {
+    }
+
+    private final int capacity;
+    //Memoize every rule function, not only the ones declared with the memo pragma
+    private final boolean all;
+    private final LinkedHashMap<Key, Expr> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MemoTable(int capacity, boolean all) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Memo table capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.all = all;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Expr> eldest) {
+                if (size() <= MemoTable.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    public boolean all() {
+        return all;
+    }
+
+    public synchronized Expr get(Key key) {
+        Expr result = entries.get(key);
+        if (result == null) misses++;
+        else hits++;
+        return result;
+    }
+
+    public synchronized void put(Key key, Expr result) {
+        entries.put(key, result);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", size=" + entries.size() + "/" + capacity;
+    }
+}
@@ -0,0 +1,109 @@
+package eval;
+
+import ast.Call;
+import ast.Expr;
+import modules.RuleKey;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Fork/join support of the parallel strategy.
+ * Rules are pure, so the strict arguments of one call can be reduced independently; calls of impure native
+ * functions are not forked (see RewriteEngine#isPure). An argument is forked if its estimated cost reaches
+ * the threshold: the largest step count measured for its function so far, or its term size while the
+ * function was not measured yet. A worker only forks while its own queue is
+ * almost empty and the number of live tasks is below the cap, idle workers steal the forked tasks.
+ */
+class ParallelReduction {
+    static final int DEFAULT_THRESHOLD = 64;
+    //Forked tasks a worker may have queued before it evaluates arguments itself again
+    private static final int MAX_SURPLUS = 2;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int maxTasks;
+    private final AtomicInteger liveTasks = new AtomicInteger();
+    private final AtomicLong forks = new AtomicLong();
+    //Largest number of rewrite steps measured for a function
+    private final Map<RuleKey, Long> costs = new ConcurrentHashMap<>();
+
+    ParallelReduction() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD, 4 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    ParallelReduction(ForkJoinPool pool, int threshold, int maxTasks) {
+        this.pool = pool;
+        this.threshold = threshold;
+        this.maxTasks = maxTasks;
+    }
+
+    //Runs the evaluation on a worker of the pool, so joining a task helps with the forked work
+    Expr invoke(Supplier<Expr> evaluation) {
+        if (ForkJoinTask.getPool() == pool) return evaluation.get();
+        return pool.invoke(task(evaluation));
+    }
+
+    boolean shouldFork(Call argument) {
+        if (liveTasks.get() >= maxTasks) return false;
+        if (ForkJoinTask.getPool() == pool && ForkJoinTask.getSurplusQueuedTaskCount() > MAX_SURPLUS) return false;
+        return estimate(argument) >= threshold;
+    }
+
+    ForkJoinTask<Expr> fork(Supplier<Expr> evaluation) {
+        liveTasks.incrementAndGet();
+        forks.incrementAndGet();
+        return task(() -> {
+            try {
+                return evaluation.get();
+            } finally {
+                liveTasks.decrementAndGet();
+            }
+        }).fork();
+    }
+
+    long estimate(Call call) {
+        Long cost = costs.get(new RuleKey(call.function(), call.arguments().size()));
+        return cost != null ? cost : size(call);
+    }
+
+    void record(Call call, long steps) {
+        RuleKey key = new RuleKey(call.function(), call.arguments().size());
+        Long cost = costs.get(key);
+        if (cost == null || cost < steps) costs.merge(key, steps, Math::max);
+    }
+
+    long forks() {
+        return forks.get();
+    }
+
+    private static RecursiveTask<Expr> task(Supplier<Expr> evaluation) {
+        return new RecursiveTask<>() {
+            @Override
+            protected Expr compute() {
+                return evaluation.get();
+            }
+        };
+    }
+
+    //Number of nodes, counting stops at the threshold
+    private long size(Call call) {
+        Deque<Expr> pending = new ArrayDeque<>();
+        pending.push(call);
+        long size = 0;
+        while (!pending.isEmpty() && size < threshold) {
+            Expr expr = pending.pop();
+            size++;
+            if (expr instanceof Call c) c.arguments().forEach(pending::push);
+        }
+        return size;
+    }
+}
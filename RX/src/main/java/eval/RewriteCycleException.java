@@ -0,0 +1,33 @@
+package eval;
+
+import ast.Call;
+import ast.Rule;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+//A redex came up again in the same position, so the evaluation would never terminate
+public class RewriteCycleException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    //Terms and rules are not serializable, only the message survives serialization
+    private final transient List<Call> redexes;
+    private final transient List<Rule> rules;
+
+    RewriteCycleException(List<Call> redexes, List<Rule> rules) {
+        super("Rewrite cycle: " + redexes.stream().map(Call::toString).collect(Collectors.joining(" -> "))
+                + " -> " + redexes.getFirst() + " using " + rules.stream().map(Rule::toString).collect(Collectors.joining("; ")));
+        this.redexes = redexes;
+        this.rules = rules;
+    }
+
+    //Redexes of one round of the cycle, the first one follows the last one again
+    public List<Call> redexes() {
+        return redexes;
+    }
+
+    //Rule applied to each redex
+    public List<Rule> rules() {
+        return rules;
+    }
+}
@@ -0,0 +1,10 @@
+package eval;
+
+public enum Strategy {
+    //Innermost: all arguments are reduced before the call is rewritten
+    EAGER,
+    //Call-by-need: arguments are passed as thunks and only evaluated when a pattern or native needs them
+    LAZY,
+    //Innermost, expensive independent arguments are reduced in parallel on a fork/join pool
+    PARALLEL
+}
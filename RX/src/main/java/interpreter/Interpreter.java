@@ -1,9 +1,14 @@
 package interpreter;
 
 import ast.*;
+import engine.NativeRuleRegistry;
 import engine.RewriteEngine;
 import engine.RuleValidator;
+import eval.EvalContext;
+import eval.EvalOutcome;
 import eval.Evaluator;
+import eval.MemoTable;
+import eval.Strategy;
 import lexer.Lexer;
 import modules.ModuleLoader;
 import modules.ModuleTester;
@@ -11,21 +16,75 @@ import modules.Namespace;
 import parser.Parser;
 import repl.Highlighter;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Interpreter {
 
     private final boolean debug;
     private final boolean highlighting;
     private final boolean testModules;
+    private final boolean specialized;
+    private final boolean memoizeAll;
+    private final Strategy strategy;
+    //Number of top-level expressions evaluated concurrently
+    private final int jobs;
+    private final boolean detectCycles;
+    //Limits of every top-level expression, a null timeout means no deadline
+    private final long maxSteps;
+    private final Duration timeout;
 
-    public Interpreter(boolean debug, boolean highlighting, boolean testModules) {
+    //Value or stopped evaluation of one top-level expression
+    private record Evaluation(EvalOutcome outcome, int peakDepth) {
+    }
+
+    public Interpreter(boolean debug, boolean highlighting, boolean testModules, boolean specialized) {
+        this(debug, highlighting, testModules, specialized, false);
+    }
+
+    public Interpreter(boolean debug, boolean highlighting, boolean testModules, boolean specialized, boolean memoizeAll) {
+        this(debug, highlighting, testModules, specialized, memoizeAll, Strategy.EAGER);
+    }
+
+    public Interpreter(boolean debug, boolean highlighting, boolean testModules, boolean specialized, boolean memoizeAll,
+                       Strategy strategy) {
+        this(debug, highlighting, testModules, specialized, memoizeAll, strategy, 1);
+    }
+
+    public Interpreter(boolean debug, boolean highlighting, boolean testModules, boolean specialized, boolean memoizeAll,
+                       Strategy strategy, int jobs) {
+        this(debug, highlighting, testModules, specialized, memoizeAll, strategy, jobs, false);
+    }
+
+    public Interpreter(boolean debug, boolean highlighting, boolean testModules, boolean specialized, boolean memoizeAll,
+                       Strategy strategy, int jobs, boolean detectCycles) {
+        this(debug, highlighting, testModules, specialized, memoizeAll, strategy, jobs, detectCycles, Long.MAX_VALUE, null);
+    }
+
+    public Interpreter(boolean debug, boolean highlighting, boolean testModules, boolean specialized, boolean memoizeAll,
+                       Strategy strategy, int jobs, boolean detectCycles, long maxSteps, Duration timeout) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Number of jobs must be positive: " + jobs);
+        }
         this.debug = debug;
         this.highlighting = highlighting;
         this.testModules = testModules;
+        this.specialized = specialized;
+        this.memoizeAll = memoizeAll;
+        this.strategy = strategy;
+        this.jobs = jobs;
+        this.detectCycles = detectCycles;
+        this.maxSteps = maxSteps;
+        this.timeout = timeout;
     }
 
     public void interpret(Path filename) throws IOException {
@@ -44,6 +103,7 @@ public class Interpreter {
         List<Import> imports = new ArrayList<>();
         List<Rule> rules = new ArrayList<>();
         List<Expr> expressions = new ArrayList<>();
+        List<TopLevelItem> pragmas = new ArrayList<>();
 
         for (TopLevelItem item : items) {
             if (item instanceof Rule r) {
@@ -58,11 +118,15 @@ public class Interpreter {
                 imports.add(i);
                 log("  Found import: " + highlight(i.toString()));
             }
+            else if (item instanceof Memo || item instanceof Strict) {
+                pragmas.add(item);
+                log("  Found pragma: " + highlight(item.toString()));
+            }
         }
 
         log("[3] Loading modules");
         ModuleLoader loader = new ModuleLoader(Path.of("modules/"), testModules);
-        Map<String, Namespace> namespaces = loader.loadAll(rules, imports);
+        Map<String, Namespace> namespaces = loader.loadAll(rules, imports, pragmas);
         log("  Modules loaded: " + namespaces.keySet());
 
         log("[4] Validating namespaces");
@@ -98,22 +162,18 @@ public class Interpreter {
         }
 
         log("[5] Starting evaluation");
-        RewriteEngine engine = new RewriteEngine(namespaces);
-        Evaluator evaluator = new Evaluator(engine);
-
-        StringBuilder output = new StringBuilder();
-
-        for (int i = 0; i < expressions.size(); i++) {
-            Expr expr = expressions.get(i);
-            log("  Evaluating expression [" + (i + 1) + "]: " + highlight(expr.toString()) );
-
-            Expr result = evaluator.evaluate(expr, "Main");
-
-            log("  Result: " + highlight(result.toString()));
-
-            output.append("// Expression ").append(i + 1).append(": ").append(expr).append("\n");
-            output.append(result).append("\n\n");
-        }
+        RewriteEngine engine = new RewriteEngine(namespaces, specialized);
+        if (specialized) log("  Using specialized decision trees");
+        if (TermFactory.isEnabled()) log("  Using hash-consed terms");
+        if (!NativeRuleRegistry.intrinsicsEnabled()) log("  Intrinsics disabled, only rules are used");
+        MemoTable memo = new MemoTable(MemoTable.DEFAULT_CAPACITY, memoizeAll);
+        if (memoizeAll) log("  Memoizing all rule functions");
+        if (strategy == Strategy.LAZY) log("  Using lazy evaluation");
+        if (strategy == Strategy.PARALLEL) log("  Using parallel reduction of arguments");
+        if (jobs > 1) log("  Evaluating " + jobs + " expressions concurrently");
+        if (detectCycles) log("  Detecting rewrite cycles");
+        if (maxSteps != Long.MAX_VALUE) log("  Step budget per expression: " + maxSteps);
+        if (timeout != null) log("  Timeout per expression: " + timeout.toMillis() + " ms");
 
         log("[6] Create directory: out");
         Path outputDir = Path.of("out");
@@ -121,11 +181,96 @@ public class Interpreter {
 
         log("[7] Create output: out/" + filename.getFileName().toString().replaceAll("\\.rx$", "_output.rx"));
         Path outFile = outputDir.resolve(filename.getFileName().toString().replaceAll("\\.rx$", "_output.rx"));
-        Files.writeString(outFile, output.toString());
 
+        try (BufferedWriter output = Files.newBufferedWriter(outFile)) {
+            evaluateAll(engine, memo, expressions, output);
+        }
+
+        log("  Memo table: " + memo);
         log("[8] Output written to: " + outFile);
     }
 
+    /**
+     * Writes the values of the expressions in their order, each one as soon as all previous ones are done.
+     * With several jobs the first error in that order is rethrown, like the sequential evaluation would,
+     * and the evaluations still running are cancelled. An expression that exceeds its step budget or timeout
+     * is reported with its partial term in a comment, the following expressions are still evaluated.
+     */
+    void evaluateAll(RewriteEngine engine, MemoTable memo, List<Expr> expressions, Writer output) throws IOException {
+        //The engine and the memo table are shared, every evaluation gets its own evaluator and limits.
+        //Cancelling this context cancels all of them
+        EvalContext evalContext = EvalContext.unlimited();
+        ExecutorService executor = jobs > 1 ? Executors.newFixedThreadPool(jobs, Interpreter::daemon) : null;
+        try {
+            List<Future<Evaluation>> pending = new ArrayList<>();
+            if (executor != null) {
+                for (Expr expr : expressions) {
+                    pending.add(executor.submit(() -> evaluate(engine, memo, expr, evalContext)));
+                }
+            }
+
+            for (int i = 0; i < expressions.size(); i++) {
+                Expr expr = expressions.get(i);
+                log("  Evaluating expression [" + (i + 1) + "]: " + highlight(expr.toString()) );
+
+                Evaluation evaluation = executor == null ? evaluate(engine, memo, expr, evalContext) : await(pending.get(i));
+
+                output.write("// Expression " + (i + 1) + ": " + expr + "\n");
+                switch (evaluation.outcome()) {
+                    case EvalOutcome.Value value -> {
+                        log("  Result: " + highlight(value.value().toString()));
+                        output.write(value.value() + "\n\n");
+                    }
+                    case EvalOutcome.Exceeded exceeded -> {
+                        log("  Stopped: " + highlight(exceeded.toString()));
+                        output.write("// " + exceeded + "\n\n");
+                    }
+                }
+                log("  Peak stack depth: " + evaluation.peakDepth());
+                boolean nextDone = executor != null && i + 1 < pending.size() && pending.get(i + 1).isDone();
+                if (!nextDone) output.flush();
+            }
+        } finally {
+            if (executor != null) {
+                //Only does something after an error, all evaluations are done otherwise
+                evalContext.cancel();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    //The evaluation is only cancelled if a failed evaluation cancelled the others, the deadline starts here
+    private Evaluation evaluate(RewriteEngine engine, MemoTable memo, Expr expr, EvalContext evalContext) {
+        Evaluator evaluator = new Evaluator(engine, memo, strategy);
+        EvalContext limits = evalContext.limited(maxSteps, timeout, detectCycles);
+        EvalOutcome outcome = evaluator.evaluate(TermFactory.intern(expr), "Main", limits);
+        if (outcome instanceof EvalOutcome.Exceeded exceeded && exceeded.limit() == EvalContext.Limit.CANCELLED) {
+            throw new IllegalStateException("Evaluation of " + expr + " was cancelled");
+        }
+        return new Evaluation(outcome, evaluator.peakDepth());
+    }
+
+    //Pool threads do not keep the JVM alive, e.g. after the main thread failed
+    private static Thread daemon(Runnable task) {
+        Thread thread = new Thread(task, "rx-evaluation");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    //Rethrows the error of a failed evaluation like the sequential evaluation would
+    private static Evaluation await(Future<Evaluation> evaluation) {
+        try {
+            return evaluation.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error error) throw error;
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an evaluation", e);
+        }
+    }
+
     private void log(String message) {
         if (!debug) return;
         System.out.println("[DEBUG] " + message);
@@ -2,8 +2,11 @@ package modules;
 
 import ast.Expr;
 import ast.Import;
+import ast.Memo;
 import ast.Rule;
+import ast.Strict;
 import ast.TopLevelItem;
+import engine.NativeRuleRegistry;
 import lexer.Lexer;
 import parser.Parser;
 
@@ -15,6 +18,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -31,9 +35,16 @@ public class ModuleLoader {
     }
 
     public Map<String, Namespace> loadAll(List<Rule> mainRules, List<Import> mainImports) {
+        return loadAll(mainRules, mainImports, List.of());
+    }
+
+    //Pragmas are memo and strict declarations
+    public Map<String, Namespace> loadAll(List<Rule> mainRules, List<Import> mainImports,
+                                          List<? extends TopLevelItem> mainPragmas) {
         loadedModules.clear();
+        NativeRuleRegistry.loadPlugins(userModulesPath);
         loadPrelude();
-        Namespace mainNamespace = registerMain(mainRules, mainImports);
+        Namespace mainNamespace = registerMain(mainRules, mainImports, mainPragmas);
 
         for (Import importModule : mainNamespace.imports()) {
             if (loadedModules.containsKey(importModule.module())) {
@@ -51,13 +62,22 @@ public class ModuleLoader {
         loadedModules.put("Prelude", prelude);
     }
 
-    private Namespace registerMain(List<Rule> mainRules, List<Import> mainImports) {
-        Namespace main = new Namespace("Main", mainRules, mainImports, List.of());
+    private Namespace registerMain(List<Rule> mainRules, List<Import> mainImports,
+                                   List<? extends TopLevelItem> mainPragmas) {
+        Namespace main = new Namespace("Main", mainRules, mainImports, List.of(), Namespace.index(mainRules),
+                new HashSet<>(), new HashMap<>());
+        addPragmas(main, mainPragmas);
         loadedModules.put("Main", main);
         return main;
     }
 
     private Namespace parseModuleFile(String moduleName) {
+        //Namespaces that only consist of native plugin functions have no source file
+        if (!moduleExists(moduleName) && NativeRuleRegistry.hasNamespace(moduleName)) {
+            return new Namespace(moduleName, new ArrayList<>(), List.of(), List.of(), Namespace.index(List.of()),
+                    new HashSet<>(), new HashMap<>());
+        }
+
         String sourceCode = readModuleSource(moduleName);
         Parser parser = new Parser(new Lexer(sourceCode));
         List<TopLevelItem> items = parser.parse();
@@ -65,6 +85,7 @@ public class ModuleLoader {
         List<Import> imports = new ArrayList<>();
         List<Rule> rules = new ArrayList<>();
         List<Expr> expressions = new ArrayList<>();
+        List<TopLevelItem> pragmas = new ArrayList<>();
         for (TopLevelItem item : items) {
             if (item instanceof Rule rule) {
                 rules.add(rule);
@@ -78,9 +99,30 @@ public class ModuleLoader {
                     loadedModules.put(imp.module(), imported);
                 }
                 imports.add(imp);
+            } else if (item instanceof Memo || item instanceof Strict) {
+                pragmas.add(item);
+            }
+        }
+        Namespace namespace = new Namespace(moduleName, rules, imports, expressions, Namespace.index(rules),
+                new HashSet<>(), new HashMap<>());
+        addPragmas(namespace, pragmas);
+        return namespace;
+    }
+
+    private static void addPragmas(Namespace namespace, List<? extends TopLevelItem> pragmas) {
+        for (TopLevelItem pragma : pragmas) {
+            if (pragma instanceof Memo memo) {
+                namespace.memoized().add(memo.function());
+            } else if (pragma instanceof Strict strict) {
+                namespace.addStrictness(strict);
             }
         }
-        return new Namespace(moduleName, rules, imports, expressions);
+    }
+
+    private boolean moduleExists(String moduleName) {
+        return moduleName.equals("Prelude")
+                || getClass().getResource("/modules/" + moduleName + ".rx") != null
+                || Files.exists(userModulesPath.resolve(moduleName + ".rx"));
     }
 
     private String readModuleSource(String moduleName) {
@@ -22,9 +22,10 @@ public class ModuleTester {
             List<Expr> passes = new ArrayList<>();
             for (Expr expr : ns.unitTests()) {
                 Expr result = evaluator.evaluate(expr, ns.name());
-                if (!(result instanceof StringLiteral(String value))) {
+                if (!(result instanceof StringLiteral string)) {
                     throw new RuntimeException("Invalid Unit-Test: " + expr + " -> " + result);
                 }
+                String value = string.value();
                 if(!value.startsWith("[Failed]") && !value.startsWith("[Success]")){
                     throw new RuntimeException("Invalid Unit-Test: " + expr + " -> " + result);
                 }
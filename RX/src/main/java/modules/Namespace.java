@@ -3,8 +3,70 @@ package modules;
 import ast.Expr;
 import ast.Import;
 import ast.Rule;
+import ast.Strict;
+import engine.DecisionTree;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public record Namespace(String name, List<Rule> rules, List<Import> imports, List<Expr> unitTests) {
+//memoized: functions declared with the memo pragma, strictness: argument masks of the strict pragma
+public record Namespace(String name, List<Rule> rules, List<Import> imports, List<Expr> unitTests,
+                        Map<RuleKey, DecisionTree> dispatch, Set<String> memoized,
+                        Map<RuleKey, boolean[]> strictness) {
+
+    public Namespace(String name, List<Rule> rules, List<Import> imports, List<Expr> unitTests) {
+        this(name, rules, imports, unitTests, index(rules), new HashSet<>(), new HashMap<>());
+    }
+
+    //Arguments are strict unless the function was declared with non-strict arguments
+    public boolean[] strictness(String function, int arity) {
+        return strictness.get(new RuleKey(function, arity));
+    }
+
+    public void addStrictness(Strict strict) {
+        boolean[] arguments = new boolean[strict.arguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = strict.arguments().get(i);
+        }
+        strictness.put(new RuleKey(strict.function(), arguments.length), arguments);
+    }
+
+    //Dispatch index: (function, arity) -> compiled rules in declaration order, so first-match semantics are kept
+    public static Map<RuleKey, DecisionTree> index(List<Rule> rules) {
+        Map<RuleKey, List<Rule>> buckets = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            buckets.computeIfAbsent(keyOf(rule), k -> new ArrayList<>()).add(rule);
+        }
+        Map<RuleKey, DecisionTree> dispatch = new HashMap<>();
+        for (Map.Entry<RuleKey, List<Rule>> bucket : buckets.entrySet()) {
+            dispatch.put(bucket.getKey(), DecisionTree.compile(bucket.getValue()));
+        }
+        return dispatch;
+    }
+
+    public DecisionTree lookup(String function, int arity) {
+        return dispatch.get(new RuleKey(function, arity));
+    }
+
+    public List<Rule> candidates(String function, int arity) {
+        DecisionTree tree = lookup(function, arity);
+        return tree == null ? List.of() : tree.rules();
+    }
+
+    //Rules added after loading (REPL) have to be added to the index as well
+    public void addRule(Rule rule) {
+        rules.add(rule);
+        List<Rule> bucket = new ArrayList<>(candidates(rule.pattern().name(), rule.pattern().arguments().size()));
+        bucket.add(rule);
+        dispatch.put(keyOf(rule), DecisionTree.compile(bucket));
+    }
+
+    private static RuleKey keyOf(Rule rule) {
+        return new RuleKey(rule.pattern().name(), rule.pattern().arguments().size());
+    }
 }
@@ -0,0 +1,8 @@
+package modules;
+
+public record RuleKey(String function, int arity) {
+    @Override
+    public String toString() {
+        return function + "/" + arity;
+    }
+}
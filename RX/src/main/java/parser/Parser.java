@@ -9,6 +9,8 @@ import java.util.List;
 public class Parser {
     private final Lexer lexer;
     private Token current;
+    //Token after the current one, only read when a pragma has to be recognized
+    private Token next;
 
     public Parser(Lexer lexer) {
         this.lexer = lexer;
@@ -16,7 +18,13 @@ public class Parser {
     }
 
     private void advance() {
-        current = lexer.nextToken();
+        current = next != null ? next : lexer.nextToken();
+        next = null;
+    }
+
+    private Token peek() {
+        if (next == null) next = lexer.nextToken();
+        return next;
     }
 
     private boolean match(TokenType type) {
@@ -40,6 +48,10 @@ public class Parser {
                 items.add(parseDefinition());
             } else if(match(TokenType.IMPORT)) {
                 items.add(parseImport());
+            } else if(matchPragma("memo")) {
+                items.add(new Memo(parseIdentifier()));
+            } else if(matchPragma("strict")) {
+                items.add(parseStrict());
             } else {
                 items.add(parseExpression());
             }
@@ -47,12 +59,41 @@ public class Parser {
         return items;
     }
 
+    //memo and strict are no reserved words, they only start a top-level item followed by an identifier as pragma
+    private boolean matchPragma(String keyword) {
+        if (current.type() != TokenType.IDENTIFIER || !current.lexeme().equals(keyword)
+                || peek().type() != TokenType.IDENTIFIER) {
+            return false;
+        }
+        advance();
+        return true;
+    }
+
     //Parse Imports
     private Import parseImport() {
         String module = parseIdentifier();
         return new Import(module);
     }
 
+    //Parse strictness pragma: strict if(!, _, _)
+    private Strict parseStrict() {
+        String function = parseIdentifier();
+        expect(TokenType.LPAREN);
+        List<Boolean> arguments = new ArrayList<>();
+        if (current.type() != TokenType.RPAREN) {
+            do {
+                if (match(TokenType.BANG)) {
+                    arguments.add(true);
+                } else {
+                    expect(TokenType.WILDCARD);
+                    arguments.add(false);
+                }
+            } while (match(TokenType.COMMA));
+        }
+        expect(TokenType.RPAREN);
+        return new Strict(function, arguments);
+    }
+
     //Parse Rules
     private Rule parseDefinition() {
         String name = parseIdentifier();
@@ -102,9 +143,9 @@ public class Parser {
                 return new PatternVar(name);
             }
             case TokenType.INT_LITERAL: {
-                int value = Integer.parseInt(current.lexeme());
+                IntLiteral value = IntLiteral.parse(current.lexeme());
                 advance();
-                return new PatternLiteral(new IntLiteral(value));
+                return new PatternLiteral(value);
             }
             case TokenType.FLOAT_LITERAL: {
                 double value = Double.parseDouble(current.lexeme());
@@ -125,7 +166,7 @@ public class Parser {
             case TokenType.FALSE: {
                 boolean value = Boolean.parseBoolean(current.lexeme());
                 advance();
-                return new PatternLiteral(new BoolLiteral(value));
+                return new PatternLiteral(BoolLiteral.of(value));
             }
             case TokenType.WILDCARD: {
                 advance();
@@ -226,7 +267,7 @@ public class Parser {
         Token token = current;
 
         if (match(TokenType.INT_LITERAL)) {
-            return new IntLiteral(Integer.parseInt(token.lexeme()));
+            return IntLiteral.parse(token.lexeme());
         }
 
         if (match(TokenType.FLOAT_LITERAL)) {
@@ -242,11 +283,11 @@ public class Parser {
         }
 
         if (match(TokenType.TRUE)) {
-            return new BoolLiteral(true);
+            return BoolLiteral.TRUE;
         }
 
         if (match(TokenType.FALSE)) {
-            return new BoolLiteral(false);
+            return BoolLiteral.FALSE;
         }
 
         if (match(TokenType.IDENTIFIER)) {
@@ -295,14 +336,7 @@ public class Parser {
             expect(TokenType.RBRACKET);
 
             // Desugar to Cons/Nil
-            Expr list = new Call(null, "Nil", List.of());
-            for (int i = elements.size() - 1; i >= 0; i--) {
-                List<Expr> args = new ArrayList<>();
-                args.add(elements.get(i));
-                args.add(list);
-                list = new Call(null, "Cons", args);
-            }
-            return list;
+            return PackedList.of(elements);
         }
 
         throw new RuntimeException("Unexpected token in expression: " + current);
@@ -24,11 +24,11 @@ public class Highlighter {
         Lexer lexer = new Lexer(input);
         StringBuilder sb = new StringBuilder();
         int parenDepth = 0;
+        boolean first = true;
 
-        while (true) {
-            Token token = lexer.nextToken();
-            if (token.type() == TokenType.EOF) break;
-
+        Token token = lexer.nextToken();
+        while (token.type() != TokenType.EOF) {
+            Token next = lexer.nextToken();
             String lexeme = token.lexeme();
 
             switch(token.type()) {
@@ -56,8 +56,13 @@ public class Highlighter {
                                 .append(lexeme).append(RESET);
                     }
                     break;
+                //memo and strict are only keywords at the start of a pragma, see Parser
                 case IDENTIFIER:
-                    sb.append(WHITE).append(lexeme).append(RESET);
+                    if (first && next.type() == TokenType.IDENTIFIER && (lexeme.equals("memo") || lexeme.equals("strict"))) {
+                        sb.append(BLUE).append(lexeme).append(" ").append(RESET);
+                    } else {
+                        sb.append(WHITE).append(lexeme).append(RESET);
+                    }
                     break;
                 case INT_LITERAL:
                     sb.append(GREEN).append(lexeme).append(RESET);
@@ -92,6 +97,8 @@ public class Highlighter {
                 default:
                     sb.append(WHITE).append(lexeme).append(RESET);
             }
+            token = next;
+            first = false;
         }
         return sb.toString();
     }
@@ -0,0 +1,47 @@
+package repl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Ctrl-C handling for the REPL.
+ * The JDK only offers this through the unsupported sun.misc.Signal API, so it is used reflectively:
+ * a direct reference causes a compiler warning that cannot be suppressed. Where the API or the signal
+ * is not available, Ctrl-C keeps its default behaviour.
+ */
+final class Interrupts {
+
+    private Interrupts() {
+    }
+
+    //Runs the action on Ctrl-C until the returned restore action is run
+    static Runnable onInterrupt(Runnable action) {
+        try {
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Object signal = signalClass.getConstructor(String.class).newInstance("INT");
+            Object handler = Proxy.newProxyInstance(handlerClass.getClassLoader(), new Class<?>[]{handlerClass},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "handle" -> {
+                            action.run();
+                            yield null;
+                        }
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        default -> "Interrupts.handler";
+                    });
+            Method handle = signalClass.getMethod("handle", signalClass, handlerClass);
+            Object previous = handle.invoke(null, signal, handler);
+            return () -> {
+                try {
+                    handle.invoke(null, signal, previous);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Could not restore the Ctrl-C handler", e);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return () -> {
+            };
+        }
+    }
+}
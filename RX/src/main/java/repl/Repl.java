@@ -2,19 +2,27 @@ package repl;
 
 import ast.Expr;
 import ast.Import;
+import ast.Memo;
 import ast.Rule;
+import ast.Strict;
 import ast.TopLevelItem;
+import eval.EvalContext;
+import eval.EvalOutcome;
 import eval.TraceEntry;
 import modules.ModuleLoader;
 import engine.RewriteEngine;
+import engine.NativeFunction;
+import engine.NativeRuleRegistry;
 import engine.RuleValidator;
 import eval.Evaluator;
+import eval.MemoTable;
 import lexer.Lexer;
 import modules.ModuleTester;
 import modules.Namespace;
 import parser.Parser;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 
 public class Repl {
@@ -23,12 +31,18 @@ public class Repl {
     ModuleLoader loader = new ModuleLoader(Path.of("modules/"), false);
     List<Import> rootImports = new ArrayList<>();
     List<Rule> rootRules = new ArrayList<>();
-    Map<String, Namespace> namespaces = loader.loadAll(rootRules, rootImports);
+    List<TopLevelItem> rootPragmas = new ArrayList<>();
+    Map<String, Namespace> namespaces = loader.loadAll(rootRules, rootImports, rootPragmas);
     RewriteEngine engine = new RewriteEngine(namespaces);
-    Evaluator evaluator = new Evaluator(engine);
+    //Cached results are only valid for the current rules, so every new evaluator gets a fresh table
+    Evaluator evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
     private boolean traceMode = false;
     private boolean highlighting = true;
     private boolean testMode = false;
+    private boolean cycleDetection = false;
+    //Limits of every evaluation, a null timeout means no deadline
+    private long maxSteps = Long.MAX_VALUE;
+    private Duration timeout = null;
 
     public void start() {
         printWelcome();
@@ -63,6 +77,11 @@ public class Repl {
     }
 
     private void processCommand(String input) {
+        String[] parts = input.split("\\s+");
+        if (parts.length == 2 && (parts[0].equals("\\steps") || parts[0].equals("\\timeout"))) {
+            setLimit(parts[0], parts[1]);
+            return;
+        }
         switch (input) {
             case "\\q":
                 System.out.println("Exiting RX REPL... bye.");
@@ -85,6 +104,17 @@ public class Repl {
                 traceMode = !traceMode;
                 System.out.println("Trace mode set to " + (traceMode ? "on" : "off") + "\n");
                 break;
+            case "\\in":
+                NativeRuleRegistry.setIntrinsicsEnabled(!NativeRuleRegistry.intrinsicsEnabled());
+                //Memoized results computed with the other setting are dropped
+                engine = new RewriteEngine(namespaces);
+                evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
+                System.out.println("Intrinsics set to " + (NativeRuleRegistry.intrinsicsEnabled() ? "on" : "off") + "\n");
+                break;
+            case "\\cy":
+                cycleDetection = !cycleDetection;
+                System.out.println("Cycle detection set to " + (cycleDetection ? "on" : "off") + "\n");
+                break;
             case "\\test":
                 testMode = !testMode;
                 loader = new ModuleLoader(Path.of("modules/"), testMode);
@@ -104,15 +134,39 @@ public class Repl {
         System.out.println("Type '\\r' to show all available rules.");
         System.out.println("Type '\\t' to toggle trace-mode. Current mode: " + (traceMode ? "on" : "off"));
         System.out.println("Type '\\test' to toggle test-mode. Current mode is: " + (testMode ? "on" : "off"));
+        System.out.println("Type '\\cy' to toggle cycle detection. Current mode: " + (cycleDetection ? "on" : "off"));
+        System.out.println("Type '\\in' to toggle native intrinsics. Current mode: "
+                + (NativeRuleRegistry.intrinsicsEnabled() ? "on" : "off"));
+        System.out.println("Type '\\steps <n|off>' to set the step budget. Current budget: "
+                + (maxSteps == Long.MAX_VALUE ? "off" : maxSteps));
+        System.out.println("Type '\\timeout <ms|off>' to set the timeout. Current timeout: "
+                + (timeout == null ? "off" : timeout.toMillis() + " ms"));
+        System.out.println("Press Ctrl-C to cancel a running evaluation.");
         System.out.println();
     }
 
+    private void setLimit(String command, String value) {
+        if (!value.equals("off") && !value.matches("[1-9][0-9]{0,17}")) {
+            System.out.println("Expected a positive number or 'off': " + value + "\n");
+            return;
+        }
+        boolean off = value.equals("off");
+        if (command.equals("\\steps")) {
+            maxSteps = off ? Long.MAX_VALUE : Long.parseLong(value);
+            System.out.println("Step budget set to " + value + "\n");
+        } else {
+            timeout = off ? null : Duration.ofMillis(Long.parseLong(value));
+            System.out.println("Timeout set to " + (off ? value : value + " ms") + "\n");
+        }
+    }
+
     private void clearRules() {
         rootRules.clear();
         rootImports.clear();
-        namespaces = loader.loadAll(rootRules, rootImports);
+        rootPragmas.clear();
+        namespaces = loader.loadAll(rootRules, rootImports, rootPragmas);
         engine = new RewriteEngine(namespaces);
-        evaluator = new Evaluator(engine);
+        evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
         System.out.println("All rules cleared.");
     }
 
@@ -131,8 +185,16 @@ public class Repl {
                 for (String rule : highlightedRules) {
                     System.out.println(rule);
                 }
+                for (NativeFunction function : NativeRuleRegistry.functions(namespace.name())) {
+                    System.out.println(highlight(function.toString()));
+                }
                 System.out.println();
             }
+            System.out.println("Native functions:");
+            for (NativeFunction function : NativeRuleRegistry.functions(null)) {
+                System.out.println(highlight(function.toString()));
+            }
+            System.out.println();
         }
     }
 
@@ -148,6 +210,10 @@ public class Repl {
                     evaluateExpression(expr);
                 } else if (item instanceof Import imp) {
                     loadImport(imp);
+                } else if (item instanceof Memo memo) {
+                    addMemo(memo);
+                } else if (item instanceof Strict strict) {
+                    addStrictness(strict);
                 }
             }
         } catch (RuntimeException e) {
@@ -161,9 +227,9 @@ public class Repl {
             List<Rule> newRules = new ArrayList<>(namespaces.get("Main").rules());
             newRules.add(rule);
             RuleValidator.checkRules(newRules, "Main");
-            namespaces.get("Main").rules().add(rule);
+            namespaces.get("Main").addRule(rule);
             engine = new RewriteEngine(namespaces);
-            evaluator = new Evaluator(engine);
+            evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
             String highlightedRule = highlight(rule.toString());
             System.out.println("Rule added: " + highlightedRule);
         } catch (Exception e) {
@@ -172,10 +238,36 @@ public class Repl {
         }
     }
 
+    private void addMemo(Memo memo) {
+        rootPragmas.add(memo);
+        namespaces.get("Main").memoized().add(memo.function());
+        evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
+        System.out.println("Memoizing: " + highlight(memo.function()));
+    }
+
+    private void addStrictness(Strict strict) {
+        rootPragmas.add(strict);
+        namespaces.get("Main").addStrictness(strict);
+        engine = new RewriteEngine(namespaces);
+        evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
+        System.out.println("Strictness: " + highlight(strict.toString()));
+    }
+
+    //Ctrl-C cancels the running evaluation instead of ending the session
     private void evaluateExpression(Expr expr) {
+        EvalContext evalContext = new EvalContext(maxSteps, timeout, cycleDetection);
+        Runnable restore = Interrupts.onInterrupt(evalContext::cancel);
+        try {
+            evaluateExpression(expr, evalContext);
+        } finally {
+            restore.run();
+        }
+    }
+
+    private void evaluateExpression(Expr expr, EvalContext evalContext) {
         if (traceMode) {
             List<TraceEntry> traceEntries = new ArrayList<>();
-            Expr result = evaluator.evaluateWithTrace(expr, traceEntries, "Main");
+            EvalOutcome outcome = evaluator.evaluateWithTrace(expr, traceEntries, "Main", evalContext);
             System.out.println();
             for (TraceEntry trace : traceEntries) {
                 String highlightedReducedCall = highlight(trace.expression());
@@ -190,17 +282,31 @@ public class Repl {
                         highlightedResult
                 );
             }
+            if (printCancelled(outcome)) return;
             String highlightedExpr = highlight(expr.toString());
-            String highlightedResult = highlight(result.toString());
+            String highlightedResult = highlight(((EvalOutcome.Value) outcome).value().toString());
             System.out.printf("\nInitial Expression: %s\nResult: %s\n\n", highlightedExpr, highlightedResult);
         } else {
-            Expr result = evaluator.evaluate(expr, "Main");
+            EvalOutcome outcome = evaluator.evaluate(expr, "Main", evalContext);
+            if (printCancelled(outcome)) return;
             String highlightedExpr = highlight(expr.toString());
-            String highlightedResult = highlight(result.toString());
+            String highlightedResult = highlight(((EvalOutcome.Value) outcome).value().toString());
             System.out.printf("Expression: %s\nResult: %s\n\n", highlightedExpr, highlightedResult);
         }
     }
 
+    private boolean printCancelled(EvalOutcome outcome) {
+        if (!(outcome instanceof EvalOutcome.Exceeded exceeded)) return false;
+        String reason = switch (exceeded.limit()) {
+            case STEPS -> "stopped by the step budget";
+            case DEADLINE -> "stopped by the timeout";
+            case CANCELLED -> "cancelled";
+        };
+        String message = "\u001B[0;31m" + "Evaluation " + reason + " after " + exceeded.steps() + " steps" + "\u001B[0m";
+        System.out.println(message + "\nPartial term: " + highlight(exceeded.partial().toString()) + "\n");
+        return true;
+    }
+
     private void loadImport(Import imp) {
         if (namespaces.get("Main").imports().stream().map(Import::module).toList().contains(imp.module())) {
             System.out.println("Module already imported: " + highlight(imp.toString()));
@@ -208,7 +314,7 @@ public class Repl {
         }
         try {
             rootImports.add(imp);
-            namespaces = loader.loadAll(rootRules, rootImports);
+            namespaces = loader.loadAll(rootRules, rootImports, rootPragmas);
 
             RuleValidator.checkNamespaces(namespaces);
 
@@ -234,14 +340,14 @@ public class Repl {
             }
 
             engine = new RewriteEngine(namespaces);
-            evaluator = new Evaluator(engine);
+            evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
             String highlightedImport = highlight(imp.toString());
             System.out.println("Module imported: " + highlightedImport);
         } catch (Exception e) {
             rootImports.remove(imp);
-            namespaces = loader.loadAll(rootRules, rootImports);
+            namespaces = loader.loadAll(rootRules, rootImports, rootPragmas);
             engine = new RewriteEngine(namespaces);
-            evaluator = new Evaluator(engine);
+            evaluator = new Evaluator(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false));
             String highlightedImport = highlight(imp.toString());
             String message = "\u001B[0;31m" + "Failed to load module: " + "\u001B[0m";
             System.out.println(message + highlightedImport + "\n" + e.getMessage());
@@ -0,0 +1,38 @@
+package ast;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IntLiteralTest {
+
+    @Test
+    void smallValuesAreCached() {
+        assertThat(IntLiteral.of(42)).isSameAs(IntLiteral.of(42));
+        assertThat(IntLiteral.of(-128)).isSameAs(IntLiteral.of(-128));
+        assertThat(IntLiteral.of(100_000)).isNotSameAs(IntLiteral.of(100_000)).isEqualTo(IntLiteral.of(100_000));
+        assertThat(BoolLiteral.of(true)).isSameAs(BoolLiteral.TRUE);
+    }
+
+    @Test
+    void valuesInTheLongRangeHaveOneRepresentation() {
+        IntLiteral big = new IntLiteral(BigInteger.valueOf(7));
+
+        assertThat(big.isLong()).isTrue();
+        assertThat(big).isEqualTo(new IntLiteral(7)).hasSameHashCodeAs(new IntLiteral(7));
+        assertThat(IntLiteral.of(BigInteger.TEN)).isSameAs(IntLiteral.of(10));
+    }
+
+    @Test
+    void parsesLiteralsBeyondTheLongRange() {
+        IntLiteral literal = IntLiteral.parse("123456789012345678901234567890");
+
+        assertThat(literal.isLong()).isFalse();
+        assertThat(literal.toString()).isEqualTo("123456789012345678901234567890");
+        assertThat(literal.bigValue()).isEqualTo(new BigInteger("123456789012345678901234567890"));
+        assertThatThrownBy(literal::value).isInstanceOf(ArithmeticException.class);
+    }
+}
@@ -0,0 +1,87 @@
+package ast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MapLiteralTest {
+
+    @Test
+    void behavesLikeAnInsertionOrderedMap() {
+        Random random = new Random(42);
+        Map<Expr, Expr> expected = new LinkedHashMap<>();
+        MapLiteral map = MapLiteral.EMPTY;
+        for (int i = 0; i < 20_000; i++) {
+            Expr key = IntLiteral.of(random.nextInt(2_000));
+            if (random.nextInt(4) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                Expr value = IntLiteral.of(i);
+                expected.put(key, value);
+                map = map.put(key, value);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        assertThat(map.keys()).containsExactlyElementsOf(expected.keySet());
+        assertThat(map.values()).containsExactlyElementsOf(expected.values());
+    }
+
+    @Test
+    void keysWithTheSameHashAreKeptApart() {
+        //Long.hashCode of 2^32 and 1 is the same
+        IntLiteral a = IntLiteral.of(1);
+        IntLiteral c = IntLiteral.of(1L << 32);
+        assertThat(a.hashCode()).isEqualTo(c.hashCode());
+
+        MapLiteral map = MapLiteral.EMPTY.put(a, new StringLiteral("a")).put(c, new StringLiteral("c"));
+        assertThat(map.get(a)).isEqualTo(new StringLiteral("a"));
+        assertThat(map.get(c)).isEqualTo(new StringLiteral("c"));
+        assertThat(map.remove(a).get(c)).isEqualTo(new StringLiteral("c"));
+        assertThat(map.remove(a).remove(c)).isEqualTo(MapLiteral.EMPTY);
+        assertThat(map.get(IntLiteral.of((1L << 32) + 1))).isNull();
+    }
+
+    @Test
+    void updatesShareTheOldVersion() {
+        MapLiteral one = MapLiteral.EMPTY.put(new StringLiteral("a"), IntLiteral.of(1));
+        MapLiteral two = one.put(new StringLiteral("b"), IntLiteral.of(2));
+
+        assertThat(one.size()).isEqualTo(1);
+        assertThat(two.size()).isEqualTo(2);
+        assertThat(one.put(new StringLiteral("a"), IntLiteral.of(1))).isSameAs(one);
+        assertThat(two.remove(new StringLiteral("b"))).isEqualTo(one);
+    }
+
+    @Test
+    void equalMapsHaveTheSameOrder() {
+        StringLiteral a = new StringLiteral("a");
+        StringLiteral b = new StringLiteral("b");
+        MapLiteral ab = MapLiteral.EMPTY.put(a, IntLiteral.of(1)).put(b, IntLiteral.of(2));
+        MapLiteral ba = MapLiteral.EMPTY.put(b, IntLiteral.of(2)).put(a, IntLiteral.of(1));
+
+        assertThat(ab).isNotEqualTo(ba);
+        assertThat(ab.toString()).isNotEqualTo(ba.toString());
+        assertThat(ab.put(a, IntLiteral.of(3)).put(a, IntLiteral.of(1))).isEqualTo(ab).hasSameHashCodeAs(ab);
+        assertThat(ba.remove(b).put(b, IntLiteral.of(2))).isEqualTo(ab).hasSameHashCodeAs(ab);
+    }
+
+    @Test
+    void convertsFromAndToAssociationLists() {
+        Expr list = Lists.of(List.of(
+                Lists.of(List.of(new StringLiteral("x"), IntLiteral.of(1))),
+                Lists.of(List.of(new StringLiteral("y"), IntLiteral.of(2)))));
+
+        MapLiteral map = MapLiteral.fromList(list);
+
+        assertThat(map.toList()).isEqualTo(list);
+        assertThat(map.toString()).isEqualTo("Cons(Cons(\"x\", Cons(1, Nil())), Cons(Cons(\"y\", Cons(2, Nil())), Nil()))");
+        assertThat(MapLiteral.fromList(IntLiteral.of(1))).isNull();
+    }
+}
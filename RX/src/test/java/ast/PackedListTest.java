@@ -0,0 +1,88 @@
+package ast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PackedListTest {
+
+    private static Expr cells(int... values) {
+        Expr list = new Call(null, "Nil", List.of());
+        for (int i = values.length - 1; i >= 0; i--) {
+            list = new Call(null, "Cons", List.of(new IntLiteral(values[i]), list));
+        }
+        return list;
+    }
+
+    private static Expr packed(int... values) {
+        return PackedList.of(Arrays.stream(values).<Expr>mapToObj(IntLiteral::of).toList());
+    }
+
+    @Test
+    void packedListsEqualTheirConsCells() {
+        Expr packed = packed(1, 2, 3);
+
+        assertThat(packed).isEqualTo(cells(1, 2, 3));
+        assertThat(cells(1, 2, 3)).isEqualTo(packed);
+        assertThat(packed.hashCode()).isEqualTo(cells(1, 2, 3).hashCode());
+        assertThat(packed.toString()).isEqualTo("Cons(1, Cons(2, Cons(3, Nil())))");
+        assertThat(packed(2, 1)).isNotEqualTo(cells(1, 2));
+    }
+
+    @Test
+    void cellsAreViewsOfTheSameArray() {
+        Call first = (Call) packed(1, 2, 3);
+        Call second = (Call) first.arguments().get(1);
+
+        assertThat(first.arguments().get(0)).isEqualTo(new IntLiteral(1));
+        assertThat(second.arguments().get(1)).isSameAs(((Call) first.arguments().get(1)).arguments().get(1));
+        assertThat(PackedList.view(second)).containsExactly(new IntLiteral(2), new IntLiteral(3));
+        assertThat(PackedList.view(((Call) second.arguments().get(1)).arguments().get(1))).isEmpty();
+        assertThat(first.isNormal()).isTrue();
+    }
+
+    @Test
+    void explodedStringsAreCharListsReadFromTheString() {
+        StringLiteral text = StringLiteral.concat(new StringLiteral("ab".repeat(200)), new StringLiteral("c"));
+        Call exploded = (Call) PackedList.explode(text);
+        Call rest = (Call) exploded.arguments().get(1);
+
+        Expr cells = new Call(null, "Nil", List.of());
+        for (int i = text.length() - 1; i >= 0; i--) {
+            cells = new Call(null, "Cons", List.of(new CharLiteral(text.charAt(i)), cells));
+        }
+        assertThat(exploded).isEqualTo(cells);
+        assertThat(rest).isEqualTo(((Call) cells).arguments().get(1));
+        assertThat(rest.hashCode()).isEqualTo(((Call) cells).arguments().get(1).hashCode());
+        assertThat(PackedList.view(rest)).hasSize(400).startsWith(new CharLiteral('b'));
+        assertThat(PackedList.string(exploded)).isSameAs(text);
+        assertThat(PackedList.string(rest).value()).isEqualTo(text.value().substring(1));
+        assertThat(PackedList.string(packed(1))).isNull();
+    }
+
+    @Test
+    void listsWithAnotherTailOrConsCellsHaveNoView() {
+        Expr improper = PackedList.of(List.of(new IntLiteral(1)), new Var("xs"));
+
+        assertThat(improper.toString()).isEqualTo("Cons(1, xs)");
+        assertThat(PackedList.view(improper)).isNull();
+        assertThat(PackedList.view(cells(1))).isNull();
+        assertThat(((Call) improper).isNormal()).isFalse();
+    }
+
+    @Test
+    void interningKeepsTheConsCells() {
+        TermFactory.setEnabled(true);
+        try {
+            Call list = (Call) packed(1, 2);
+
+            assertThat(PackedList.isPacked(list)).isFalse();
+            assertThat(list).isSameAs(TermFactory.intern(cells(1, 2)));
+        } finally {
+            TermFactory.setEnabled(false);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SetLiteralTest {
+
+    private static SetLiteral range(int from, int to) {
+        SetLiteral set = SetLiteral.EMPTY;
+        for (int i = from; i < to; i++) {
+            set = set.insert(IntLiteral.of(i));
+        }
+        return set;
+    }
+
+    @Test
+    void bulkOperationsKeepTheOrderOfTheFirstSet() {
+        SetLiteral a = range(0, 1_000);
+        SetLiteral b = range(500, 2_000);
+
+        assertThat(a.intersect(b).elements()).containsExactlyElementsOf(range(500, 1_000).elements());
+        assertThat(a.difference(b).elements()).containsExactlyElementsOf(range(0, 500).elements());
+        assertThat(b.difference(a).elements()).containsExactlyElementsOf(range(1_000, 2_000).elements());
+
+        Set<Expr> expected = new LinkedHashSet<>(b.elements());
+        expected.addAll(a.elements());
+        assertThat(a.union(b).elements()).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void insertKeepsTheFirstPosition() {
+        SetLiteral set = SetLiteral.of(IntLiteral.of(1)).insert(IntLiteral.of(2));
+
+        assertThat(set.insert(IntLiteral.of(1))).isSameAs(set);
+        assertThat(set.insert(IntLiteral.of(3)).toList()).isEqualTo(Lists.of(List.of(
+                IntLiteral.of(1), IntLiteral.of(2), IntLiteral.of(3))));
+    }
+
+    @Test
+    void equalSetsHaveTheSameOrder() {
+        SetLiteral ascending = range(0, 100);
+        SetLiteral descending = SetLiteral.fromList(Lists.of(
+                IntStream.iterate(99, i -> i >= 0, i -> i - 1).<Expr>mapToObj(IntLiteral::of).toList()));
+
+        assertThat(descending).isNotEqualTo(ascending);
+        assertThat(descending.toString()).isNotEqualTo(ascending.toString());
+        assertThat(ascending.difference(descending)).isEqualTo(SetLiteral.EMPTY);
+        assertThat(range(0, 200).intersect(descending)).isEqualTo(ascending).hasSameHashCodeAs(ascending);
+        assertThat(range(0, 200).difference(range(100, 300))).isEqualTo(ascending).hasSameHashCodeAs(ascending);
+    }
+}
@@ -0,0 +1,67 @@
+package ast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StringLiteralTest {
+
+    @Test
+    void concatenationMatchesTheFlatString() {
+        Random random = new Random(7);
+        StringBuilder expected = new StringBuilder();
+        StringLiteral rope = new StringLiteral("");
+        for (int i = 0; i < 20_000; i++) {
+            String piece = Integer.toString(random.nextInt(1_000)) + (char) ('a' + i % 26);
+            if (random.nextBoolean()) {
+                expected.append(piece);
+                rope = StringLiteral.concat(rope, new StringLiteral(piece));
+            } else {
+                expected.insert(0, piece);
+                rope = StringLiteral.concat(new StringLiteral(piece), rope);
+            }
+        }
+
+        assertThat(rope.length()).isEqualTo(expected.length());
+        for (int i = 0; i < expected.length(); i += 97) {
+            assertThat(rope.charAt(i)).isEqualTo(expected.charAt(i));
+        }
+        assertThat(rope.hashCode()).isEqualTo(expected.toString().hashCode());
+        assertThat(rope.value()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    void stringsAreEqualRegardlessOfTheirPieces() {
+        String text = "x".repeat(300) + "y".repeat(300);
+        StringLiteral left = StringLiteral.concat(new StringLiteral("x".repeat(300)), new StringLiteral("y".repeat(300)));
+        StringLiteral right = StringLiteral.concat(new StringLiteral("x".repeat(299)), new StringLiteral("x" + "y".repeat(300)));
+
+        assertThat(left).isEqualTo(right).isEqualTo(new StringLiteral(text));
+        assertThat(left.hashCode()).isEqualTo(right.hashCode()).isEqualTo(text.hashCode());
+        assertThat(left.toString()).isEqualTo("\"" + text + "\"");
+        assertThat(left).isNotEqualTo(StringLiteral.concat(new StringLiteral("y".repeat(300)), new StringLiteral("x".repeat(300))));
+    }
+
+    @Test
+    void substringsOfARopeMatchTheFlatString() {
+        StringBuilder expected = new StringBuilder();
+        StringLiteral rope = new StringLiteral("");
+        for (int i = 0; i < 2_000; i++) {
+            String piece = i + "-" + "abc".repeat(i % 150);
+            expected.append(piece);
+            rope = StringLiteral.concat(rope, new StringLiteral(piece));
+        }
+
+        for (int begin = 0; begin <= expected.length(); begin += 997) {
+            StringLiteral suffix = rope.substring(begin).substring(begin % 5 == 0 ? 0 : 1);
+            String flat = expected.substring(Math.min(begin + (begin % 5 == 0 ? 0 : 1), expected.length()));
+            assertThat(suffix.length()).isEqualTo(flat.length());
+            assertThat(suffix.hashCode()).isEqualTo(flat.hashCode());
+            assertThat(suffix).isEqualTo(new StringLiteral(flat));
+        }
+        assertThat(rope.substring(0)).isSameAs(rope);
+        assertThat(rope.substring(rope.length()).length()).isZero();
+    }
+}
@@ -0,0 +1,122 @@
+package ast;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TermFactoryTest {
+
+    @AfterEach
+    void tearDown() {
+        TermFactory.setEnabled(false);
+    }
+
+    private static Expr list(int... values) {
+        Expr result = new Call(null, "Nil", List.of());
+        for (int i = values.length - 1; i >= 0; i--) {
+            result = new Call(null, "Cons", List.of(new IntLiteral(values[i]), result));
+        }
+        return result;
+    }
+
+    @Test
+    void testInternReturnsSameInstanceForEqualTerms() {
+        TermFactory.setEnabled(true);
+
+        Expr a = TermFactory.intern(list(1, 2, 3));
+        Expr b = TermFactory.intern(list(1, 2, 3));
+
+        assertThat(a).isSameAs(b);
+        assertThat(((Call) a).isInterned()).isTrue();
+    }
+
+    @Test
+    void testInternSharesSubterms() {
+        TermFactory.setEnabled(true);
+
+        Call a = (Call) TermFactory.intern(list(1, 2, 3));
+        Call b = (Call) TermFactory.intern(list(0, 2, 3));
+
+        assertThat(a).isNotEqualTo(b);
+        assertThat(a.arguments().get(1)).isSameAs(b.arguments().get(1));
+    }
+
+    @Test
+    void testTermsInternedBeforeTheTableWasClearedStayEqual() {
+        TermFactory.setEnabled(true);
+        Expr before = TermFactory.intern(list(1, 2));
+        TermFactory.setEnabled(false);
+        TermFactory.setEnabled(true);
+
+        Expr after = TermFactory.intern(list(1, 2));
+
+        assertThat(after).isNotSameAs(before).isEqualTo(before);
+        assertThat(before).isEqualTo(after);
+        assertThat(((Call) before).isInterned()).isFalse();
+        assertThat(TermFactory.intern(before)).isSameAs(after);
+    }
+
+    @Test
+    void testInternedAndPlainTermsAreEqual() {
+        TermFactory.setEnabled(true);
+
+        Expr interned = TermFactory.intern(list(1, 2));
+        Expr plain = list(1, 2);
+
+        assertThat(interned).isEqualTo(plain);
+        assertThat(plain).isEqualTo(interned);
+        assertThat(interned.hashCode()).isEqualTo(plain.hashCode());
+    }
+
+    @Test
+    void testCallBuildsInternedTerm() {
+        TermFactory.setEnabled(true);
+
+        Call a = TermFactory.call("Math", "f", List.of(new Var("x"), new IntLiteral(1)));
+        Call b = TermFactory.call("Math", "f", List.of(new Var("x"), new IntLiteral(1)));
+        Call c = TermFactory.call(null, "f", List.of(new Var("x"), new IntLiteral(1)));
+
+        assertThat(a).isSameAs(b);
+        assertThat(a).isNotEqualTo(c);
+    }
+
+    @Test
+    void testEqualMapsAreShared() {
+        TermFactory.setEnabled(true);
+
+        MapLiteral map = MapLiteral.EMPTY.put(new IntLiteral(1), new IntLiteral(2));
+        Call a = TermFactory.call(null, "f", List.of(map));
+        Call b = TermFactory.call(null, "f", List.of(MapLiteral.EMPTY.put(new IntLiteral(1), new IntLiteral(2))));
+        Call c = TermFactory.call(null, "f", List.of(map.put(new IntLiteral(3), new IntLiteral(4))));
+
+        assertThat(a).isSameAs(b);
+        assertThat(c).isNotEqualTo(a);
+    }
+
+    @Test
+    void testSetsInDifferentOrderAreNotShared() {
+        TermFactory.setEnabled(true);
+
+        Expr ascending = SetLiteral.fromList(list(1, 2));
+        Expr descending = SetLiteral.fromList(list(2, 1));
+        Call a = TermFactory.call(null, "f", List.of(ascending));
+        Call b = TermFactory.call(null, "f", List.of(descending));
+
+        assertThat(a).isNotEqualTo(b);
+        assertThat(TermFactory.call(null, "f", List.of(SetLiteral.fromList(list(2, 1))))).isSameAs(b);
+    }
+
+    @Test
+    void testDisabledFactoryDoesNotIntern() {
+        Expr a = TermFactory.intern(list(1, 2));
+        Expr b = TermFactory.intern(list(1, 2));
+
+        assertThat(a).isNotSameAs(b);
+        assertThat(a).isEqualTo(b);
+        assertThat(((Call) a).isInterned()).isFalse();
+        assertThat(TermFactory.size()).isZero();
+    }
+}
@@ -0,0 +1,155 @@
+package engine;
+
+import ast.*;
+import lexer.Lexer;
+import org.junit.jupiter.api.Test;
+import parser.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DecisionTreeTest {
+
+    private DecisionTree compile(String rules) {
+        List<Rule> parsed = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        return DecisionTree.compile(parsed);
+    }
+
+    @Test
+    void testSimpleMatch() {
+        Call call = new Call(null, "add", List.of(new IntLiteral(1), new IntLiteral(2)));
+        DecisionTree tree = DecisionTree.compile(List.of(new Rule(new Pattern("add", List.of(
+                new PatternVar("x"),
+                new PatternVar("y")
+        )), new Var("x"))));
+
+        Optional<DecisionTree.Match> match = tree.match(call);
+
+        assertThat(match).isPresent();
+        assertThat(match.get().bindings()).containsEntry("x", new IntLiteral(1));
+        assertThat(match.get().bindings()).containsEntry("y", new IntLiteral(2));
+    }
+
+    @Test
+    void testNestedMatch() {
+        Call call = new Call(null, "wrap", List.of(
+                new Call(null, "add", List.of(new IntLiteral(1), new IntLiteral(2)))
+        ));
+        DecisionTree tree = DecisionTree.compile(List.of(new Rule(new Pattern("wrap", List.of(
+                new PatternExpr(new Call(null, "add", List.of(new Var("a"), new Var("b"))))
+        )), new Var("a"))));
+
+        Optional<DecisionTree.Match> match = tree.match(call);
+
+        assertThat(match).isPresent();
+        assertThat(match.get().bindings()).containsEntry("a", new IntLiteral(1));
+        assertThat(match.get().bindings()).containsEntry("b", new IntLiteral(2));
+    }
+
+    @Test
+    void testNoMatchDifferentConstructor() {
+        DecisionTree tree = compile("def length(Nil()) = 0");
+
+        Call call = new Call(null, "length", List.of(new Call(null, "Cons", List.of(new IntLiteral(1), new Call(null, "Nil", List.of())))));
+
+        assertThat(tree.match(call)).isEmpty();
+    }
+
+    @Test
+    void testFirstMatchInDeclarationOrder() {
+        DecisionTree tree = compile("""
+                def fib(0) = 0
+                def fib(1) = 1
+                def fib(n) = fib(n - 1) + fib(n - 2)
+                """);
+
+        assertThat(tree.match(new Call(null, "fib", List.of(new IntLiteral(0))))).get()
+                .extracting(m -> m.rule().replacement()).isEqualTo(new IntLiteral(0));
+        assertThat(tree.match(new Call(null, "fib", List.of(new IntLiteral(1))))).get()
+                .extracting(m -> m.rule().replacement()).isEqualTo(new IntLiteral(1));
+        assertThat(tree.match(new Call(null, "fib", List.of(new IntLiteral(7))))).get()
+                .extracting(m -> m.bindings().get("n")).isEqualTo(new IntLiteral(7));
+    }
+
+    @Test
+    void testVariableRuleBeforeLiteralRuleWins() {
+        DecisionTree tree = compile("""
+                def daysInMonth(y, m) = 31
+                def daysInMonth(y, 2) = 28
+                """);
+
+        Optional<DecisionTree.Match> match = tree.match(new Call(null, "daysInMonth", List.of(new IntLiteral(2023), new IntLiteral(2))));
+
+        assertThat(match).get().extracting(m -> m.rule().replacement()).isEqualTo(new IntLiteral(31));
+    }
+
+    @Test
+    void testNonLinearPatternFallsThrough() {
+        DecisionTree tree = compile("""
+                def same(x, x) = true
+                def same(_, _) = false
+                """);
+
+        assertThat(tree.match(new Call(null, "same", List.of(new IntLiteral(1), new IntLiteral(1))))).get()
+                .extracting(m -> m.rule().replacement()).isEqualTo(new BoolLiteral(true));
+        assertThat(tree.match(new Call(null, "same", List.of(new IntLiteral(1), new IntLiteral(2))))).get()
+                .extracting(m -> m.rule().replacement()).isEqualTo(new BoolLiteral(false));
+    }
+
+    @Test
+    void testInstantiateFillsSlotsAndSharesGroundTerms() {
+        DecisionTree tree = compile("def rev(Cons(h, t), acc) = rev(t, Cons(h, acc), Nil())");
+        Call nil = new Call(null, "Nil", List.of());
+        Call call = new Call(null, "rev", List.of(new Call(null, "Cons", List.of(new IntLiteral(1), nil)), nil));
+
+        DecisionTree.Match match = tree.match(call).orElseThrow();
+        Call result = (Call) match.instantiate();
+
+        assertThat(match.slots()).containsExactly(new IntLiteral(1), nil, nil);
+        assertThat(result).isEqualTo(new Call(null, "rev", List.of(nil, new Call(null, "Cons", List.of(new IntLiteral(1), nil)), nil)));
+        assertThat(result.arguments().get(2)).isSameAs(((Call) match.rule().replacement()).arguments().get(2));
+    }
+
+    @Test
+    void testInspectedDelayedArgumentsAreBoundForced() {
+        DecisionTree tree = compile("""
+            def f(0, _) = 0
+            def f(n, m) = n + m
+        """);
+        Call first = new Call(null, "g", List.of(new IntLiteral(1)));
+        Call second = new Call(null, "g", List.of(new IntLiteral(2)));
+        List<Expr> forced = new ArrayList<>();
+        Forcer forcer = new Forcer() {
+            @Override
+            public Expr head(Expr expr) {
+                forced.add(expr);
+                return ((Call) expr).arguments().getFirst();
+            }
+
+            @Override
+            public Expr full(Expr expr) {
+                return head(expr);
+            }
+        };
+
+        DecisionTree.Match match = tree.match(new Call(null, "f", List.of(first, second)), forcer).orElseThrow();
+
+        assertThat(match.slots()).containsExactly(new IntLiteral(1), second);
+        assertThat(forced).containsOnly(first);
+    }
+
+    @Test
+    void testIdentityRulesAreClassifiedAsConstructors() {
+        assertThat(compile("def Cons(h, t) = Cons(h, t)").isConstructor()).isTrue();
+        assertThat(compile("def Nil() = Nil()").isConstructor()).isTrue();
+
+        assertThat(compile("def swap(a, b) = swap(b, a)").isConstructor()).isFalse();
+        assertThat(compile("def P(a, a) = P(a, a)").isConstructor()).isFalse();
+        assertThat(compile("def Z(0) = Z(0)").isConstructor()).isFalse();
+        assertThat(compile("def f(x) = M.f(x)").isConstructor()).isFalse();
+        assertThat(compile("def f(0) = 1\ndef f(x) = f(x)").isConstructor()).isFalse();
+    }
+}
@@ -1,12 +1,23 @@
 package engine;
 
 import ast.*;
+import eval.EvalContext;
+import eval.EvalOutcome;
+import eval.Evaluator;
+import eval.TraceEntry;
+import modules.ModuleLoader;
+import modules.Namespace;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 
 public class NativeRuleRegistryTest {
 
@@ -18,6 +29,21 @@ public class NativeRuleRegistryTest {
         assertThat(result).contains(new IntLiteral(7));
     }
 
+    @Test
+    void integerOverflowIsPromotedToBigInteger() {
+        IntLiteral max = new IntLiteral(Long.MAX_VALUE);
+        Expr sum = NativeRuleRegistry.eval(new Call(null, "add", List.of(max, new IntLiteral(1)))).orElseThrow();
+        Expr product = NativeRuleRegistry.eval(new Call(null, "mul", List.of(max, max))).orElseThrow();
+
+        assertThat(sum).isEqualTo(new IntLiteral(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE)));
+        assertThat(((IntLiteral) product).isLong()).isFalse();
+        //Results in the long range are represented as longs again
+        assertThat(NativeRuleRegistry.eval(new Call(null, "sub", List.of(sum, new IntLiteral(1)))))
+                .contains(max);
+        assertThat(NativeRuleRegistry.eval(new Call(null, "div", List.of(product, max)))).contains(max);
+        assertThat(NativeRuleRegistry.eval(new Call(null, "gt", List.of(product, max)))).contains(BoolLiteral.TRUE);
+    }
+
     @Test
     void testEvalConcat() {
         Call call = new Call(null, "concat",
@@ -63,4 +89,150 @@ public class NativeRuleRegistryTest {
         ));
         assertThat(resultOpt).contains(expected);
     }
+
+    @Test
+    void implodeRebuildsStringsFromCharLists() {
+        StringLiteral hello = new StringLiteral("hello");
+        Expr exploded = NativeRuleRegistry.eval(new Call(null, "explode", List.of(hello))).orElseThrow();
+        Expr rest = ((Call) exploded).arguments().get(1);
+        Expr changed = new Call(null, "Cons", List.of(new CharLiteral('j'), rest));
+
+        assertThat(NativeRuleRegistry.eval(new Call(null, "implode", List.of(exploded)))).get().isSameAs(hello);
+        assertThat(NativeRuleRegistry.eval(new Call(null, "implode", List.of(changed)))).contains(new StringLiteral("jello"));
+        assertThat(NativeRuleRegistry.eval(new Call(null, "implode", List.of(new Call(null, "Nil", List.of())))))
+                .contains(new StringLiteral(""));
+        assertThat(NativeRuleRegistry.eval(new Call(null, "implode", List.of(
+                new Call(null, "Cons", List.of(new IntLiteral(1), new Call(null, "Nil", List.of()))))))).isEmpty();
+    }
+
+    @Test
+    void lookupIsResolvedByNameAndArity() {
+        assertThat(NativeRuleRegistry.lookup("add", 2)).isNotNull();
+        assertThat(NativeRuleRegistry.lookup("add", 3)).isNull();
+        assertThat(NativeRuleRegistry.lookup("unknown", 1)).isNull();
+    }
+
+    @Test
+    void unsupportedOperandsAreNotApplied() {
+        NativeFunction add = NativeRuleRegistry.lookup("add", 2);
+
+        assertThat(add.apply(List.of(new FloatLiteral(1.5), new StringLiteral("x")))).isNull();
+        assertThat(add.apply(List.of(new FloatLiteral(1.5), new IntLiteral(2)))).isEqualTo(new FloatLiteral(3.5));
+    }
+
+    @Test
+    void eqComparesLiteralsOfDifferentTypes() {
+        NativeFunction eq = NativeRuleRegistry.lookup("eq", 2);
+
+        assertThat(eq.apply(List.of(new IntLiteral(1), new IntLiteral(1)))).isEqualTo(new BoolLiteral(true));
+        assertThat(eq.apply(List.of(new IntLiteral(1), new FloatLiteral(1.0)))).isEqualTo(new BoolLiteral(false));
+    }
+
+    @Test
+    void pluginFunctionsAreDispatchedInTheirNamespace() {
+        NativeRuleRegistry.loadPlugins(Path.of("modules/"));
+
+        assertThat(NativeRuleRegistry.functions("Hash"))
+                .extracting(NativeFunction::qualifiedName)
+                .containsExactly("Hash.fnv");
+
+        Map<String, Namespace> namespaces = new ModuleLoader(Path.of("modules/"), false)
+                .loadAll(List.of(), List.of(new Import("Hash")));
+        RewriteEngine engine = new RewriteEngine(namespaces);
+
+        List<TraceEntry> trace = new ArrayList<>();
+        Expr result = new Evaluator(engine).evaluateWithTrace(
+                new Call("Hash", "fnv", List.of(new StringLiteral("a"))), trace, "Main");
+
+        assertThat(result).isEqualTo(new IntLiteral(0xe40c292c));
+        assertThat(trace).extracting(TraceEntry::rule).containsExactly("Hash.fnv(\"a\") = " + 0xe40c292c);
+        assertThat(NativeRuleRegistry.lookup(null, "fnv", 1)).isNull();
+    }
+
+    @Test
+    void mathIntrinsicsAgreeWithTheRulesAndShowInTheTrace() {
+        Map<String, Namespace> namespaces = new ModuleLoader(Path.of("modules/"), false)
+                .loadAll(List.of(), List.of(new Import("Math")));
+        Evaluator evaluator = new Evaluator(new RewriteEngine(namespaces));
+        List<Call> exact = List.of(
+                new Call("Math", "fact", List.of(new IntLiteral(21))),
+                new Call("Math", "fib", List.of(new IntLiteral(25))),
+                new Call("Math", "gcd", List.of(new IntLiteral(4), new IntLiteral(-6))),
+                new Call("Math", "pow", List.of(new IntLiteral(3), new IntLiteral(41))),
+                new Call("Math", "pow", List.of(new FloatLiteral(1.5), new IntLiteral(0))),
+                new Call("Math", "sqrt", List.of(new IntLiteral(4))),
+                new Call("Math", "sqrt", List.of(new IntLiteral(2))),
+                new Call("Math", "cos", List.of(new IntLiteral(0))),
+                new Call("Math", "sin", List.of(new IntLiteral(0))));
+        List<Call> approximate = List.of(
+                new Call("Math", "sqrt", List.of(new FloatLiteral(2.0))),
+                new Call("Math", "sin", List.of(new FloatLiteral(0.5))),
+                new Call("Math", "cos", List.of(new FloatLiteral(0.5))),
+                new Call("Math", "arcsin", List.of(new FloatLiteral(0.25))));
+
+        List<Expr> intrinsic = new ArrayList<>();
+        List<Expr> rules = new ArrayList<>();
+        List<TraceEntry> trace = new ArrayList<>();
+        Expr traced = evaluator.evaluateWithTrace(exact.get(2), trace, "Main");
+        try {
+            for (Call call : exact) intrinsic.add(evaluator.evaluate(call, "Main"));
+            for (Call call : approximate) intrinsic.add(evaluator.evaluate(call, "Main"));
+            NativeRuleRegistry.setIntrinsicsEnabled(false);
+            for (Call call : exact) rules.add(evaluator.evaluate(call, "Main"));
+            for (Call call : approximate) rules.add(evaluator.evaluate(call, "Main"));
+        } finally {
+            NativeRuleRegistry.setIntrinsicsEnabled(true);
+        }
+
+        assertThat(intrinsic.subList(0, exact.size())).isEqualTo(rules.subList(0, exact.size()));
+        for (int i = exact.size(); i < rules.size(); i++) {
+            assertThat(((FloatLiteral) intrinsic.get(i)).value()).isCloseTo(((FloatLiteral) rules.get(i)).value(),
+                    within(1e-3));
+        }
+        assertThat(intrinsic.get(0)).isEqualTo(new IntLiteral(new BigInteger("51090942171709440000")));
+        assertThat(intrinsic.get(5)).isEqualTo(new IntLiteral(2));
+        assertThat(intrinsic.get(7)).isEqualTo(new IntLiteral(1));
+        assertThat(traced).isEqualTo(new IntLiteral(-2));
+        assertThat(trace).extracting(TraceEntry::rule).containsExactly("Math.gcd(4, -6) = -2");
+    }
+
+    @Test
+    void largeMathArgumentsAreLeftToTheRulesSoLimitsApply() {
+        Map<String, Namespace> namespaces = new ModuleLoader(Path.of("modules/"), false)
+                .loadAll(List.of(), List.of(new Import("Math")));
+        Evaluator evaluator = new Evaluator(new RewriteEngine(namespaces));
+
+        for (Call call : List.of(
+                new Call("Math", "fact", List.of(new IntLiteral(1_000_000))),
+                new Call("Math", "fib", List.of(new IntLiteral(100_000_000))),
+                new Call("Math", "pow", List.of(new IntLiteral(3), new IntLiteral(100_000_000))),
+                new Call("Math", "pow", List.of(new IntLiteral(2), new IntLiteral(4_294_967_296L))))) {
+            assertThat(evaluator.evaluate(call, "Main", new EvalContext(1000, null)))
+                    .isInstanceOfSatisfying(EvalOutcome.Exceeded.class,
+                            exceeded -> assertThat(exceeded.limit()).isEqualTo(EvalContext.Limit.STEPS));
+        }
+        //Below the limits the intrinsics still answer in a single step
+        assertThat(evaluator.evaluate(new Call("Math", "fact", List.of(new IntLiteral(1000))), "Main",
+                new EvalContext(1, null))).isInstanceOf(EvalOutcome.Value.class);
+    }
+
+    @Test
+    void powersOfZeroAndOneAreExactForHugeExponents() {
+        Map<String, Namespace> namespaces = new ModuleLoader(Path.of("modules/"), false)
+                .loadAll(List.of(), List.of(new Import("Math")));
+        Evaluator evaluator = new Evaluator(new RewriteEngine(namespaces));
+        long[][] cases = {
+                {0, 4_294_967_296L, 0},
+                {1, 4_294_967_296L, 1},
+                {-1, 2_147_483_649L, -1},
+                {-1, 4_294_967_296L, 1},
+                {0, 3, 0},
+                {-1, 3, -1}};
+
+        for (long[] c : cases) {
+            Call pow = new Call("Math", "pow", List.of(new IntLiteral(c[0]), new IntLiteral(c[1])));
+            assertThat(evaluator.evaluate(pow, "Main", new EvalContext(1, null)))
+                    .isEqualTo(new EvalOutcome.Value(new IntLiteral(c[2]), 1));
+        }
+    }
 }
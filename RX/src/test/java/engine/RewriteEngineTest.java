@@ -1,8 +1,11 @@
 package engine;
 
 import ast.*;
+import eval.Evaluator;
+import lexer.Lexer;
 import modules.Namespace;
 import org.junit.jupiter.api.Test;
+import parser.Parser;
 
 import java.util.List;
 import java.util.Map;
@@ -20,4 +23,43 @@ public class RewriteEngineTest {
 
         assertThat(result).isEqualTo(new IntLiteral(3));
     }
+
+    @Test
+    void testSpecializedModeInlinesNativeCalls() {
+        List<Rule> rules = new Parser(new Lexer("""
+                def fact(0) = 1
+                def fact(n) = n * fact(n - 1)
+                """)).parse().stream().map(n -> (Rule) n).toList();
+        Map<String, Namespace> namespaces = Map.of("Prelude", new Namespace("Prelude", rules, List.of(), List.of()));
+        RewriteEngine interpreted = new RewriteEngine(namespaces);
+        RewriteEngine specialized = new RewriteEngine(namespaces, true);
+
+        Call call = new Call(null, "fact", List.of(new IntLiteral(3)));
+
+        assertThat(interpreted.rewrite(call, "Prelude").toString()).isEqualTo("mul(3, fact(sub(3, 1)))");
+        assertThat(specialized.rewrite(call, "Prelude").toString()).isEqualTo("mul(3, fact(2))");
+        assertThat(new Evaluator(specialized).evaluate(call, "Prelude"))
+                .isEqualTo(new Evaluator(interpreted).evaluate(call, "Prelude"))
+                .isEqualTo(new IntLiteral(6));
+    }
+
+    @Test
+    void testIntrinsicsOnlyReplacePreludeRulesForPackedLists() {
+        List<Rule> prelude = new Parser(new Lexer("""
+                def length(Nil()) = 0
+                def length(Cons(h, t)) = 1 + length(t)
+                """)).parse().stream().map(n -> (Rule) n).toList();
+        List<Rule> main = new Parser(new Lexer("def length(xs) = 42")).parse().stream().map(n -> (Rule) n).toList();
+        RewriteEngine engine = new RewriteEngine(Map.of(
+                "Prelude", new Namespace("Prelude", prelude, List.of(), List.of()),
+                "Main", new Namespace("Main", main, List.of(), List.of())));
+
+        Expr packed = PackedList.of(List.of(new IntLiteral(1), new IntLiteral(2), new IntLiteral(3)));
+        Expr cells = new Call(null, "Cons", List.of(new IntLiteral(1), new Call(null, "Nil", List.of())));
+
+        assertThat(engine.rewrite(new Call(null, "length", List.of(packed)), "Prelude")).isEqualTo(new IntLiteral(3));
+        assertThat(engine.rewrite(new Call(null, "length", List.of(cells)), "Prelude").toString())
+                .isEqualTo("add(1, length(Nil()))");
+        assertThat(engine.rewrite(new Call(null, "length", List.of(packed)), "Main")).isEqualTo(new IntLiteral(42));
+    }
 }
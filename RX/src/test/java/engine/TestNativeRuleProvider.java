@@ -0,0 +1,21 @@
+package engine;
+
+import ast.IntLiteral;
+import ast.StringLiteral;
+
+import java.util.List;
+
+public class TestNativeRuleProvider implements NativeRuleProvider {
+
+    @Override
+    public List<NativeFunction> functions() {
+        return List.of(new NativeFunction("Hash", "fnv", 1, true, args -> {
+            if (!(args.getFirst() instanceof StringLiteral s)) return null;
+            int hash = 0x811c9dc5;
+            for (char c : s.value().toCharArray()) {
+                hash = (hash ^ c) * 0x01000193;
+            }
+            return new IntLiteral(hash);
+        }));
+    }
+}
@@ -0,0 +1,51 @@
+package eval;
+
+import ast.Call;
+import ast.IntLiteral;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CycleDetectorTest {
+
+    private static Call call(String function, int n) {
+        return new Call(null, function, List.of(new IntLiteral(n)));
+    }
+
+    @Test
+    void detectsRedexRepeatedInTheSameChain() {
+        CycleDetector cycles = new CycleDetector();
+        int chain = cycles.newChain();
+
+        assertThat(cycles.visit(call("f", 1), "Main", chain)).isNull();
+        assertThat(cycles.visit(call("g", 1), "Main", chain)).isNull();
+        List<CycleDetector.Redex> cycle = cycles.visit(call("f", 1), "Main", chain);
+
+        assertThat(cycle).extracting(CycleDetector.Redex::call).containsExactly(call("f", 1), call("g", 1));
+    }
+
+    @Test
+    void ignoresRepetitionsInOtherPositionsOrContexts() {
+        CycleDetector cycles = new CycleDetector();
+        int first = cycles.newChain();
+        int second = cycles.newChain();
+
+        assertThat(cycles.visit(call("fib", 2), "Main", first)).isNull();
+        assertThat(cycles.visit(call("fib", 2), "Main", second)).isNull();
+        assertThat(cycles.visit(call("fib", 2), "Math", first)).isNull();
+    }
+
+    @Test
+    void forgetsOldRedexes() {
+        CycleDetector cycles = new CycleDetector();
+        int chain = cycles.newChain();
+        for (int i = 0; i < 100; i++) {
+            assertThat(cycles.visit(call("f", i), "Main", chain)).isNull();
+        }
+
+        assertThat(cycles.visit(call("f", 0), "Main", chain)).isNull();
+        assertThat(cycles.visit(call("f", 99), "Main", chain)).hasSize(2);
+    }
+}
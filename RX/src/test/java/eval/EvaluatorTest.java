@@ -1,21 +1,31 @@
 package eval;
 
 import ast.*;
+import engine.NativeFunction;
+import engine.NativeRuleRegistry;
 import engine.RewriteEngine;
 import lexer.Lexer;
+import modules.ModuleLoader;
 import modules.Namespace;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import parser.Parser;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class EvaluatorTest {
 
+    private Map<String, Namespace> modules;
+    private RewriteEngine engine;
     private Evaluator evaluator;
 
     @BeforeEach
@@ -36,8 +46,8 @@ public class EvaluatorTest {
         List<TopLevelItem> parsedTopLevelItems = parser.parse();
         List<Rule> rulesList = parsedTopLevelItems.stream().map(n -> (Rule) n).toList();
         Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
-        Map<String, Namespace> modules = Map.of("Prelude", prelude);
-        RewriteEngine engine = new RewriteEngine(modules);
+        this.modules = Map.of("Prelude", prelude);
+        this.engine = new RewriteEngine(modules);
         this.evaluator = new Evaluator(engine);
     }
 
@@ -214,4 +224,352 @@ public class EvaluatorTest {
         assertThat(this.evaluator.evaluate(expressionsList.get(3), "Prelude")).isEqualTo(new IntLiteral(24));
         assertThat(this.evaluator.evaluate(expressionsList.get(4), "Prelude")).isEqualTo(new FloatLiteral(10));
     }
+
+    @Test
+    void reducedSubtermsAreMarkedNormalAndNotEvaluatedAgain() {
+        String rules = """
+            def Nil() = Nil()
+            def Cons(h, t) = Cons(h, t)
+            def append(Nil(), ys) = ys
+            def append(Cons(x, xs), ys) = Cons(x, append(xs, ys))
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", prelude)));
+
+        Expr tail = localEvaluator.evaluate(new Parser(new Lexer("Cons(3, Cons(4, Nil()))")).parseExpression(), "Prelude");
+        assertThat(((Call) tail).isNormal()).isTrue();
+
+        Call append = new Call(null, "append", List.of(
+                new Parser(new Lexer("Cons(1, Cons(2, Nil()))")).parseExpression(), tail));
+        Expr result = localEvaluator.evaluate(append, "Prelude");
+
+        assertThat(result.toString()).isEqualTo("Cons(1, Cons(2, Cons(3, Cons(4, Nil()))))");
+        //The already reduced tail is shared instead of being rebuilt
+        Call second = (Call) ((Call) result).arguments().get(1);
+        assertThat(second.arguments().get(1)).isSameAs(tail);
+        assertThat(localEvaluator.evaluate(result, "Prelude")).isSameAs(result);
+    }
+
+    @Test
+    void constructorCallsAreNotRewrittenButUnknownCallsStillFail() {
+        String rules = """
+            def Pair(a, b) = Pair(a, b)
+            def fst(Pair(a, b)) = a
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", prelude)));
+
+        Call pair = new Call(null, "Pair", List.of(new IntLiteral(1), new IntLiteral(2)));
+        assertThat(localEvaluator.evaluate(pair, "Prelude")).isSameAs(pair);
+        assertThat(localEvaluator.evaluate(new Call(null, "fst", List.of(pair)), "Prelude")).isEqualTo(new IntLiteral(1));
+
+        Call unknown = new Call(null, "Triple", List.of(new IntLiteral(1)));
+        assertThatThrownBy(() -> localEvaluator.evaluate(unknown, "Prelude"))
+                .hasMessageContaining("No matching rule found");
+    }
+
+    @Test
+    void memoizedFunctionsAreEvaluatedOncePerArgument() {
+        String rules = """
+            memo fib
+            def fib(0) = 0
+            def fib(1) = 1
+            def fib(n) = fib(n - 1) + fib(n - 2)
+        """;
+        List<TopLevelItem> items = new Parser(new Lexer(rules)).parse();
+        List<Rule> rulesList = items.stream().filter(i -> i instanceof Rule).map(i -> (Rule) i).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        prelude.memoized().add("fib");
+        MemoTable memo = new MemoTable(MemoTable.DEFAULT_CAPACITY, false);
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", prelude)), memo);
+
+        Expr result = localEvaluator.evaluate(new Call(null, "fib", List.of(new IntLiteral(30))), "Prelude");
+
+        assertThat(result).isEqualTo(new IntLiteral(832040));
+        assertThat(memo.misses()).isEqualTo(31);
+        assertThat(memo.hits()).isEqualTo(28);
+    }
+
+    @Test
+    void resultsComputedWithImpureNativeFunctionsAreNotMemoized() {
+        AtomicInteger ticks = new AtomicInteger();
+        NativeRuleRegistry.register(new NativeFunction("Ticks", "next", 1, false,
+                args -> new IntLiteral(ticks.incrementAndGet())));
+        String rules = """
+            def tick(x) = x + next(x)
+            def double(x) = 2 * x
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        MemoTable memo = new MemoTable(MemoTable.DEFAULT_CAPACITY, true);
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of(
+                "Ticks", new Namespace("Ticks", rulesList, List.of(), List.of()),
+                "Prelude", new Namespace("Prelude", List.of(), List.of(), List.of()))), memo);
+        Expr tick = new Call(null, "tick", List.of(new IntLiteral(10)));
+        Expr doubled = new Call(null, "double", List.of(new IntLiteral(10)));
+
+        assertThat(localEvaluator.evaluate(tick, "Ticks")).isEqualTo(new IntLiteral(11));
+        assertThat(localEvaluator.evaluate(tick, "Ticks")).isEqualTo(new IntLiteral(12));
+        assertThat(localEvaluator.evaluate(doubled, "Ticks")).isEqualTo(new IntLiteral(20));
+        assertThat(localEvaluator.evaluate(doubled, "Ticks")).isEqualTo(new IntLiteral(20));
+        assertThat(memo.hits()).isEqualTo(1);
+    }
+
+    @Test
+    void deepRecursionDoesNotOverflowTheJavaStack() {
+        String rules = """
+            def Nil() = Nil()
+            def Cons(h, t) = Cons(h, t)
+            def upto(0) = Nil()
+            def upto(n) = Cons(n, upto(n - 1))
+            def length(Nil()) = 0
+            def length(Cons(h, t)) = 1 + length(t)
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", prelude)));
+
+        Expr list = localEvaluator.evaluate(new Call(null, "upto", List.of(new IntLiteral(100_000))), "Prelude");
+        Expr length = localEvaluator.evaluate(new Call(null, "length", List.of(list)), "Prelude");
+
+        assertThat(length).isEqualTo(new IntLiteral(100_000));
+        Expr copy = localEvaluator.evaluate(new Call(null, "upto", List.of(new IntLiteral(100_000))), "Prelude");
+        assertThat(copy).isNotSameAs(list).isEqualTo(list);
+        assertThat(list.toString()).startsWith("Cons(100000, Cons(99999, ").endsWith("Nil()" + ")".repeat(100_000));
+    }
+
+    @Test
+    void tailCallsRunWithConstantStack() {
+        String rules = """
+            def Nil() = Nil()
+            def Cons(h, t) = Cons(h, t)
+            def upto(0, acc) = acc
+            def upto(n, acc) = upto(n - 1, Cons(n, acc))
+            def rev(Nil(), acc) = acc
+            def rev(Cons(h, t), acc) = rev(t, Cons(h, acc))
+            def count(0) = 0
+            def count(n) = count(n - 1)
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        prelude.memoized().add("count");
+        MemoTable memo = new MemoTable(MemoTable.DEFAULT_CAPACITY, false);
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", prelude)), memo);
+
+        Expr list = localEvaluator.evaluate(new Parser(new Lexer("upto(100000, Nil())")).parseExpression(), "Prelude");
+        assertThat(localEvaluator.peakDepth()).isLessThan(5);
+
+        Expr reversed = localEvaluator.evaluate(new Call(null, "rev", List.of(list, new Call(null, "Nil", List.of()))), "Prelude");
+        assertThat(localEvaluator.peakDepth()).isLessThan(5);
+        assertThat(reversed.toString()).startsWith("Cons(100000, Cons(99999, ");
+
+        //Memoized tail calls share one memo frame
+        assertThat(localEvaluator.evaluate(new Call(null, "count", List.of(new IntLiteral(50_000))), "Prelude"))
+                .isEqualTo(new IntLiteral(0));
+        assertThat(localEvaluator.peakDepth()).isLessThan(5);
+        assertThat(memo.get(new MemoTable.Key("Prelude", new Call(null, "count", List.of(new IntLiteral(123))))))
+                .isEqualTo(new IntLiteral(0));
+    }
+
+    @Test
+    void nonStrictArgumentsAreOnlyEvaluatedWhenTaken() {
+        String rules = """
+            strict if(!, _, _)
+            strict and(!, _)
+            def if(true, thenBranch, _) = thenBranch
+            def if(false, _, elseBranch) = elseBranch
+            def and(false, _) = false
+            def and(true, b) = b
+            def fact(0) = 1
+            def fact(n) = if(n < 2, 1, n * fact(n - 1))
+        """;
+        List<TopLevelItem> items = new Parser(new Lexer(rules)).parse();
+        List<Rule> rulesList = items.stream().filter(i -> i instanceof Rule).map(i -> (Rule) i).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        items.stream().filter(i -> i instanceof Strict).forEach(i -> prelude.addStrictness((Strict) i));
+
+        for (boolean specialized : new boolean[]{false, true}) {
+            Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", prelude), specialized));
+            Parser parser = new Parser(new Lexer("if(1 > 2, missing(1), fact(5))"));
+            assertThat(localEvaluator.evaluate(parser.parseExpression(), "Prelude")).isEqualTo(new IntLiteral(120));
+            parser = new Parser(new Lexer("false && missing(2)"));
+            assertThat(localEvaluator.evaluate(parser.parseExpression(), "Prelude")).isEqualTo(new BoolLiteral(false));
+            parser = new Parser(new Lexer("true && 1 < 2"));
+            assertThat(localEvaluator.evaluate(parser.parseExpression(), "Prelude")).isEqualTo(new BoolLiteral(true));
+        }
+    }
+
+    @Test
+    void recursionThroughAndOrRunsWithConstantStack() {
+        String rules = """
+            def upto(0, acc) = acc
+            def upto(n, acc) = upto(n - 1, Cons(n, acc))
+            def allPos(Nil()) = true
+            def allPos(Cons(h, t)) = h > 0 && allPos(t)
+            def anyNeg(Nil()) = false
+            def anyNeg(Cons(h, t)) = h < 0 || anyNeg(t)
+        """;
+        List<Rule> mainRules = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        Map<String, Namespace> namespaces = new ModuleLoader(Path.of("modules/"), false).loadAll(mainRules, List.of());
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(namespaces));
+
+        Expr list = localEvaluator.evaluate(new Parser(new Lexer("upto(100000, Nil())")).parseExpression(), "Main");
+        for (String function : List.of("allPos", "anyNeg", "eqList")) {
+            List<Expr> args = function.equals("eqList") ? List.of(list, list) : List.of(list);
+            Expr result = localEvaluator.evaluate(new Call(null, function, args), "Main");
+            assertThat(result).isEqualTo(new BoolLiteral(!function.equals("anyNeg")));
+            assertThat(localEvaluator.peakDepth()).isLessThan(5);
+        }
+    }
+
+    @Test
+    void parallelStrategyReturnsTheSequentialResults() {
+        String rules = """
+            def Leaf(n) = Leaf(n)
+            def Node(l, r) = Node(l, r)
+            def fib(0) = 0
+            def fib(1) = 1
+            def fib(n) = fib(n - 1) + fib(n - 2)
+            def tree(0) = Leaf(fib(10))
+            def tree(n) = Node(tree(n - 1), tree(n - 1))
+            def sum(Leaf(n)) = n
+            def sum(Node(l, r)) = sum(l) + sum(r)
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        RewriteEngine engine = new RewriteEngine(Map.of("Prelude", new Namespace("Prelude", rulesList, List.of(), List.of())));
+        Evaluator sequential = new Evaluator(engine);
+        Evaluator parallel = new Evaluator(engine, null, Strategy.PARALLEL);
+
+        for (String source : List.of("fib(20)", "sum(tree(8))", "tree(4)")) {
+            Expr expr = new Parser(new Lexer(source)).parseExpression();
+            assertThat(parallel.evaluate(expr, "Prelude")).isEqualTo(sequential.evaluate(expr, "Prelude"));
+        }
+        assertThatThrownBy(() -> parallel.evaluate(new Parser(new Lexer("fib(15) + missing(1)")).parseExpression(), "Prelude"))
+                .hasMessageContaining("No matching rule found");
+    }
+
+    @Test
+    void forkedArgumentsStopWhenAnEarlierArgumentFails() throws InterruptedException {
+        String rules = """
+            def loop(n) = loop(n + 1)
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        RewriteEngine engine = new RewriteEngine(Map.of("Prelude", new Namespace("Prelude", rulesList, List.of(), List.of())));
+        Evaluator parallel = new Evaluator(engine, null, Strategy.PARALLEL);
+        //The sum makes the loop large enough to be forked
+        String sum = String.join(" + ", Collections.nCopies(100, "1"));
+        Expr expr = new Parser(new Lexer("missing(1) + loop(" + sum + ")")).parseExpression();
+        EvalContext evalContext = EvalContext.unlimited();
+
+        assertThatThrownBy(() -> parallel.evaluate(expr, "Prelude", evalContext))
+                .hasMessageContaining("No matching rule found");
+
+        Thread.sleep(50);
+        long steps = evalContext.steps();
+        Thread.sleep(50);
+        assertThat(evalContext.steps()).isEqualTo(steps);
+        assertThat(evalContext.isCancelled()).isFalse();
+    }
+
+    @Test
+    void evaluationStopsWhenTheStepBudgetIsExceeded() {
+        Expr fib = new Call(null, "fib", List.of(new IntLiteral(25)));
+
+        EvalOutcome outcome = evaluator.evaluate(fib, "Prelude", new EvalContext(1000, null));
+
+        assertThat(outcome).isInstanceOf(EvalOutcome.Exceeded.class);
+        EvalOutcome.Exceeded exceeded = (EvalOutcome.Exceeded) outcome;
+        assertThat(exceeded.limit()).isEqualTo(EvalContext.Limit.STEPS);
+        assertThat(exceeded.steps()).isEqualTo(1001);
+        assertThat(exceeded.partial().toString()).startsWith("add(add(");
+
+        EvalOutcome small = evaluator.evaluate(new Call(null, "fib", List.of(new IntLiteral(5))), "Prelude",
+                new EvalContext(1000, null));
+        assertThat(small).isEqualTo(new EvalOutcome.Value(new IntLiteral(5), small.steps()));
+        assertThat(small.steps()).isPositive();
+    }
+
+    @Test
+    void specializedTreesCountTheNativeCallsTheyInline() {
+        Expr fib = new Call(null, "fib", List.of(new IntLiteral(15)));
+        RewriteEngine specialized = new RewriteEngine(modules, true);
+
+        for (Strategy strategy : List.of(Strategy.EAGER, Strategy.LAZY)) {
+            EvalContext interpreted = EvalContext.unlimited();
+            new Evaluator(engine, null, strategy).evaluate(fib, "Prelude", interpreted);
+            long steps = interpreted.steps();
+            Evaluator localEvaluator = new Evaluator(specialized, null, strategy);
+
+            assertThat(localEvaluator.evaluate(fib, "Prelude", new EvalContext(steps, null)))
+                    .isEqualTo(new EvalOutcome.Value(new IntLiteral(610), steps));
+            assertThat(localEvaluator.evaluate(fib, "Prelude", new EvalContext(steps - 1, null)))
+                    .isInstanceOfSatisfying(EvalOutcome.Exceeded.class,
+                            exceeded -> assertThat(exceeded.limit()).isEqualTo(EvalContext.Limit.STEPS));
+        }
+    }
+
+    @Test
+    void partialTermIncludesTheCallsAroundAForcedArgument() {
+        String rules = """
+            strict both(!, _)
+            def both(true, true) = true
+            def wrap(x) = x
+            def fib(0) = 0
+            def fib(1) = 1
+            def fib(n) = fib(n - 1) + fib(n - 2)
+        """;
+        List<TopLevelItem> items = new Parser(new Lexer(rules)).parse();
+        List<Rule> rulesList = items.stream().filter(i -> i instanceof Rule).map(i -> (Rule) i).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        items.stream().filter(i -> i instanceof Strict).forEach(i -> prelude.addStrictness((Strict) i));
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", prelude)));
+
+        EvalOutcome outcome = localEvaluator.evaluate(new Parser(new Lexer("wrap(both(true, fib(25) > 0))")).parseExpression(),
+                "Prelude", new EvalContext(1000, null));
+
+        assertThat(((EvalOutcome.Exceeded) outcome).partial().toString()).startsWith("wrap(both(true, gt(add(add(");
+    }
+
+    @Test
+    void evaluationStopsWhenCancelledOrPastTheDeadline() {
+        Expr fib = new Call(null, "fib", List.of(new IntLiteral(25)));
+        EvalContext cancelled = EvalContext.unlimited();
+        cancelled.cancel();
+        EvalContext timedOut = new EvalContext(Long.MAX_VALUE, Duration.ZERO);
+
+        assertThat(((EvalOutcome.Exceeded) evaluator.evaluate(fib, "Prelude", cancelled)).limit())
+                .isEqualTo(EvalContext.Limit.CANCELLED);
+        assertThat(((EvalOutcome.Exceeded) evaluator.evaluate(fib, "Prelude", timedOut)).limit())
+                .isEqualTo(EvalContext.Limit.DEADLINE);
+        for (Strategy strategy : List.of(Strategy.LAZY, Strategy.PARALLEL)) {
+            Evaluator other = new Evaluator(engine, null, strategy);
+            assertThat(other.evaluate(fib, "Prelude", new EvalContext(500, null)))
+                    .isInstanceOf(EvalOutcome.Exceeded.class);
+        }
+    }
+
+    @Test
+    void cycleDetectionReportsTheRulesOfTheCycle() {
+        String rules = """
+            def f(x) = g(x)
+            def g(x) = h(x + 0)
+            def h(x) = f(x)
+            def fib(0) = 0
+            def fib(1) = 1
+            def fib(n) = fib(n - 1) + fib(n - 2)
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        Evaluator localEvaluator = new Evaluator(new RewriteEngine(Map.of("Prelude", new Namespace("Prelude", rulesList, List.of(), List.of()))));
+        EvalContext detection = new EvalContext(Long.MAX_VALUE, null, true);
+
+        assertThat(localEvaluator.evaluate(new Call(null, "fib", List.of(new IntLiteral(15))), "Prelude", detection))
+                .isEqualTo(new EvalOutcome.Value(new IntLiteral(610), detection.steps()));
+        assertThatThrownBy(() -> localEvaluator.evaluate(new Call(null, "f", List.of(new IntLiteral(1))), "Prelude", detection))
+                .isInstanceOfSatisfying(RewriteCycleException.class, e -> {
+                    assertThat(e.redexes()).hasSize(3);
+                    assertThat(e.rules()).containsExactlyElementsOf(rulesList.subList(0, 3));
+                })
+                .hasMessageStartingWith("Rewrite cycle: f(1) -> g(1) -> h(1) -> f(1)");
+    }
 }
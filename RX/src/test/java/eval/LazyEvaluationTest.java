@@ -0,0 +1,98 @@
+package eval;
+
+import ast.*;
+import engine.RewriteEngine;
+import lexer.Lexer;
+import modules.Namespace;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import parser.Parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LazyEvaluationTest {
+
+    private Evaluator eager;
+    private Evaluator lazy;
+
+    @BeforeEach
+    void setup() {
+        String rules = """
+            def if(true, thenBranch, _) = thenBranch
+            def if(false, _, elseBranch) = elseBranch
+            def Nil() = Nil()
+            def Cons(h, t) = Cons(h, t)
+            def from(n) = Cons(n, from(n + 1))
+            def take(0, _) = Nil()
+            def take(n, Cons(h, t)) = Cons(h, take(n - 1, t))
+            def same(x, x) = true
+            def same(_, _) = false
+            def build(0) = Nil()
+            def build(n) = Cons(n, build(n - 1))
+            def length(Nil()) = 0
+            def length(Cons(h, t)) = 1 + length(t)
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        Namespace prelude = new Namespace("Prelude", rulesList, List.of(), List.of());
+        RewriteEngine engine = new RewriteEngine(Map.of("Prelude", prelude));
+        eager = new Evaluator(engine);
+        lazy = new Evaluator(engine, null, Strategy.LAZY);
+    }
+
+    private Expr parse(String expr) {
+        return new Parser(new Lexer(expr)).parseExpression();
+    }
+
+    @Test
+    void branchThatIsNotTakenIsNotEvaluated() {
+        Expr expr = parse("if(1 < 2, 1, missing(0))");
+
+        assertThat(lazy.evaluate(expr, "Prelude")).isEqualTo(new IntLiteral(1));
+        assertThatThrownBy(() -> eager.evaluate(expr, "Prelude")).hasMessageContaining("No matching rule found");
+    }
+
+    @Test
+    void infiniteListsAreOnlyEvaluatedAsFarAsNeeded() {
+        Expr result = lazy.evaluate(parse("take(3, from(0))"), "Prelude");
+
+        assertThat(result.toString()).isEqualTo("Cons(0, Cons(1, Cons(2, Nil())))");
+        assertThat(((Call) result).isNormal()).isTrue();
+    }
+
+    @Test
+    void nonLinearPatternsCompareForcedValues() {
+        assertThat(lazy.evaluate(parse("same(take(2, from(1)), take(2, from(1)))"), "Prelude"))
+                .isEqualTo(new BoolLiteral(true));
+        assertThat(lazy.evaluate(parse("same(1 + 1, 3)"), "Prelude")).isEqualTo(new BoolLiteral(false));
+    }
+
+    @Test
+    void deepListsAreForcedWithoutTheJavaStack() {
+        assertThat(lazy.evaluate(parse("length(build(100000))"), "Prelude")).isEqualTo(new IntLiteral(100000));
+
+        Expr list = lazy.evaluate(parse("build(100000)"), "Prelude");
+        assertThat(list).isEqualTo(eager.evaluate(parse("build(100000)"), "Prelude"));
+        assertThat(((Call) list).isNormal()).isTrue();
+    }
+
+    @Test
+    void thunkIsEvaluatedOnlyOnce() {
+        AtomicInteger evaluations = new AtomicInteger();
+        Thunk thunk = new Thunk(parse("1 + 2"), "Prelude");
+
+        for (int i = 0; i < 3; i++) {
+            Expr value = thunk.force((expr, context) -> {
+                evaluations.incrementAndGet();
+                return eager.evaluate(expr, context);
+            });
+            assertThat(value).isEqualTo(new IntLiteral(3));
+        }
+        assertThat(evaluations.get()).isEqualTo(1);
+        assertThat(thunk.toString()).isEqualTo("3");
+    }
+}
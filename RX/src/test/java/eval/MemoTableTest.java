@@ -0,0 +1,57 @@
+package eval;
+
+import ast.Call;
+import ast.IntLiteral;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MemoTableTest {
+
+    private static MemoTable.Key key(int n) {
+        return new MemoTable.Key("Main", new Call(null, "f", List.of(new IntLiteral(n))));
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        MemoTable memo = new MemoTable(10, false);
+
+        assertThat(memo.get(key(1))).isNull();
+        memo.put(key(1), new IntLiteral(1));
+        assertThat(memo.get(key(1))).isEqualTo(new IntLiteral(1));
+
+        assertThat(memo.hits()).isEqualTo(1);
+        assertThat(memo.misses()).isEqualTo(1);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        MemoTable memo = new MemoTable(2, false);
+        memo.put(key(1), new IntLiteral(1));
+        memo.put(key(2), new IntLiteral(2));
+        memo.get(key(1));
+        memo.put(key(3), new IntLiteral(3));
+
+        assertThat(memo.size()).isEqualTo(2);
+        assertThat(memo.evictions()).isEqualTo(1);
+        assertThat(memo.get(key(2))).isNull();
+        assertThat(memo.get(key(1))).isEqualTo(new IntLiteral(1));
+    }
+
+    @Test
+    void contextIsPartOfTheKey() {
+        MemoTable memo = new MemoTable(10, false);
+        memo.put(key(1), new IntLiteral(1));
+        Call call = new Call(null, "f", List.of(new IntLiteral(1)));
+
+        assertThat(memo.get(new MemoTable.Key("Math", call))).isNull();
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThatThrownBy(() -> new MemoTable(0, true)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
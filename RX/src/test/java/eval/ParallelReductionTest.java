@@ -0,0 +1,56 @@
+package eval;
+
+import ast.Call;
+import ast.Expr;
+import ast.IntLiteral;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelReductionTest {
+
+    private static Call fib(int n) {
+        return new Call(null, "fib", List.of(new IntLiteral(n)));
+    }
+
+    @Test
+    void estimatesTermSizeUntilTheFunctionWasMeasured() {
+        ParallelReduction parallel = new ParallelReduction(ForkJoinPool.commonPool(), 8, 4);
+        Call pair = new Call(null, "Pair", List.of(fib(1), fib(2)));
+
+        assertThat(parallel.estimate(fib(1))).isEqualTo(2);
+        assertThat(parallel.estimate(pair)).isEqualTo(5);
+        assertThat(parallel.shouldFork(fib(1))).isFalse();
+
+        parallel.record(fib(20), 1000);
+        parallel.record(fib(2), 3);
+        assertThat(parallel.estimate(fib(1))).isEqualTo(1000);
+        assertThat(parallel.shouldFork(fib(1))).isTrue();
+    }
+
+    @Test
+    void forksOnlyUpToTheTaskCap() {
+        ParallelReduction parallel = new ParallelReduction(ForkJoinPool.commonPool(), 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ForkJoinTask<Expr> task = parallel.fork(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new IntLiteral(1);
+        });
+        assertThat(parallel.shouldFork(fib(1))).isFalse();
+
+        release.countDown();
+        assertThat(task.join()).isEqualTo(new IntLiteral(1));
+        assertThat(parallel.shouldFork(fib(1))).isTrue();
+        assertThat(parallel.forks()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,120 @@
+package interpreter;
+
+import ast.Expr;
+import ast.Rule;
+import engine.RewriteEngine;
+import eval.MemoTable;
+import eval.Strategy;
+import lexer.Lexer;
+import modules.Namespace;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import parser.Parser;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InterpreterTest {
+
+    private RewriteEngine engine;
+
+    @BeforeEach
+    void setup() {
+        String rules = """
+            def fib(0) = 0
+            def fib(1) = 1
+            def fib(n) = fib(n - 1) + fib(n - 2)
+            def loop(n) = loop(n + 1)
+        """;
+        List<Rule> rulesList = new Parser(new Lexer(rules)).parse().stream().map(n -> (Rule) n).toList();
+        engine = new RewriteEngine(Map.of(
+                "Main", new Namespace("Main", rulesList, List.of(), List.of()),
+                "Prelude", new Namespace("Prelude", List.of(), List.of(), List.of())));
+    }
+
+    private static List<Expr> expressions(String... sources) {
+        return Stream.of(sources).map(source -> new Parser(new Lexer(source)).parseExpression()).toList();
+    }
+
+    private static Interpreter interpreter(int jobs) {
+        return new Interpreter(false, false, false, false, false, Strategy.EAGER, jobs);
+    }
+
+    //Remembers the output at every flush
+    private static final class FlushRecorder extends StringWriter {
+        final List<String> flushed = new ArrayList<>();
+
+        @Override
+        public void flush() {
+            flushed.add(toString());
+        }
+    }
+
+    @Test
+    void concurrentResultsAreWrittenInTheOrderOfTheExpressions() throws IOException {
+        List<Expr> expressions = expressions("fib(22)", "1 + 1", "fib(5)", "2 * 3");
+        StringWriter sequential = new StringWriter();
+        FlushRecorder concurrent = new FlushRecorder();
+
+        interpreter(1).evaluateAll(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false), expressions, sequential);
+        interpreter(3).evaluateAll(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false), expressions, concurrent);
+
+        assertThat(concurrent.toString()).isEqualTo(sequential.toString()).isEqualTo("""
+            // Expression 1: fib(22)
+            17711
+
+            // Expression 2: add(1, 1)
+            2
+
+            // Expression 3: fib(5)
+            5
+
+            // Expression 4: mul(2, 3)
+            6
+
+            """);
+        assertThat(concurrent.flushed).isNotEmpty().last().isEqualTo(concurrent.toString());
+    }
+
+    @Test
+    void firstErrorIsRethrownAndTheOtherEvaluationsAreCancelled() {
+        StringWriter output = new StringWriter();
+
+        assertThatThrownBy(() -> interpreter(3).evaluateAll(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false),
+                expressions("fib(10)", "missing(1)", "loop(0)", "missing(2)"), output))
+                .hasMessageContaining("missing(1)");
+
+        //The result before the error is already written out
+        assertThat(output.toString()).isEqualTo("// Expression 1: fib(10)\n55\n\n");
+    }
+
+    @Test
+    void expressionsOverTheirLimitsAreReportedAndTheOthersStillEvaluated() throws IOException {
+        List<Expr> expressions = expressions("loop(0)", "fib(10)", "loop(1)");
+
+        for (int jobs : new int[]{1, 3}) {
+            StringWriter budget = new StringWriter();
+            StringWriter deadline = new StringWriter();
+            new Interpreter(false, false, false, false, false, Strategy.EAGER, jobs, false, 1000, null)
+                    .evaluateAll(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false), expressions, budget);
+            new Interpreter(false, false, false, false, false, Strategy.EAGER, jobs, false, Long.MAX_VALUE,
+                    Duration.ofMillis(50))
+                    .evaluateAll(engine, new MemoTable(MemoTable.DEFAULT_CAPACITY, false), expressions, deadline);
+
+            assertThat(budget.toString())
+                    .startsWith("// Expression 1: loop(0)\n// budget exceeded (STEPS) after 1001 steps: loop(")
+                    .contains("// Expression 2: fib(10)\n55\n\n// Expression 3: loop(1)\n// budget exceeded (STEPS)");
+            assertThat(deadline.toString())
+                    .startsWith("// Expression 1: loop(0)\n// budget exceeded (DEADLINE)")
+                    .contains("// Expression 2: fib(10)\n55\n\n// Expression 3: loop(1)\n// budget exceeded (DEADLINE)");
+        }
+    }
+}
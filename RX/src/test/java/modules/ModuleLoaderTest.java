@@ -72,4 +72,18 @@ class ModuleLoaderTest {
 
         assertThat(modules).containsKey("Prelude");
     }
+
+    @Test
+    void testLoadAll_BuildsDispatchIndexInDeclarationOrder() {
+        ModuleLoader loader = new ModuleLoader(tempModulesDir, false);
+        Map<String, Namespace> modules = loader.loadAll(List.of(), List.of());
+
+        Namespace prelude = modules.get("Prelude");
+
+        assertThat(prelude.candidates("if", 3))
+                .extracting(r -> r.pattern().arguments().getFirst().toString())
+                .containsExactly("true", "false");
+        assertThat(prelude.candidates("if", 2)).isEmpty();
+        assertThat(prelude.candidates("add", 2)).isEmpty();
+    }
 }
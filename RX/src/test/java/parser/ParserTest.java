@@ -301,4 +301,46 @@ class ParserTest {
         assertThat(((IntLiteral) mul.arguments().get(1)).value()).isEqualTo(3);
     }
 
+
+    @Test
+    void parsesMemoPragma() {
+        List<TopLevelItem> result = parse("memo fib\ndef fib(0) = 0");
+        assertThat(result).hasSize(2);
+        assertThat(result.getFirst()).isEqualTo(new Memo("fib"));
+        assertThat(result.get(1)).isInstanceOf(Rule.class);
+    }
+
+    @Test
+    void parsesStrictPragma() {
+        List<TopLevelItem> result = parse("strict if(!, _, _)");
+        assertThat(result).containsExactly(new Strict("if", List.of(true, false, false)));
+    }
+
+    @Test
+    void memoIsOnlyAKeywordBeforeAnIdentifier() {
+        List<TopLevelItem> result = parse("""
+                def memo(memo) = memo
+                memo(1) + memo
+                memo fib
+                """);
+
+        assertThat(result).hasSize(3);
+        assertThat(result.getFirst()).isEqualTo(new Rule(new Pattern("memo", List.of(new PatternVar("memo"))), new Var("memo")));
+        assertThat(result.get(1).toString()).isEqualTo("add(memo(1), memo)");
+        assertThat(result.get(2)).isEqualTo(new Memo("fib"));
+    }
+
+    @Test
+    void strictIsOnlyAKeywordBeforeAnIdentifier() {
+        List<TopLevelItem> result = parse("""
+                def strict(strict) = strict
+                strict(1) + strict
+                strict and(!, _)
+                """);
+
+        assertThat(result).hasSize(3);
+        assertThat(result.getFirst()).isEqualTo(new Rule(new Pattern("strict", List.of(new PatternVar("strict"))), new Var("strict")));
+        assertThat(result.get(1).toString()).isEqualTo("add(strict(1), strict)");
+        assertThat(result.get(2)).isEqualTo(new Strict("and", List.of(true, false)));
+    }
 }